@@ -0,0 +1,84 @@
+/**
+ * Benchmark package
+ */
+package kr.jihee.irnlp_toolkit.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import kr.jihee.irnlp_toolkit.ml.MalletWrapper;
+import kr.jihee.irnlp_toolkit.ml.MalletWrapper.AlphabetType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cc.mallet.types.Alphabet;
+
+/**
+ * Benchmark of feature Alphabets used by MalletWrapper (one operation looks up 1024 features in a frozen alphabet)<br>
+ * - the retained heap of each alphabet is printed at setup
+ *
+ * @author Jihee
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class AlphabetBenchmark {
+
+	@Param({ "DEFAULT", "COMPACT", "HASHING" })
+	AlphabetType alphabet_type;
+
+	@Param({ "1000000" })
+	int num_features;
+
+	Alphabet alphabet;
+	String[] queries;
+
+	@Setup
+	public void setup() {
+		long before = getUsedHeap();
+		MalletWrapper.DEFAULT_ALPHABET_TYPE = alphabet_type;
+		alphabet = MalletWrapper.createAlphabet();
+		for (int i = 0; i < num_features; i++)
+			alphabet.lookupIndex(toFeature(i));
+		alphabet.stopGrowth();
+		long after = getUsedHeap();
+		System.err.printf("[%s] %d features, retained heap = %.1f MB\n", alphabet_type, num_features, (after - before) / 1e6);
+
+		Random random = new Random(0);
+		queries = new String[1024];
+		for (int i = 0; i < queries.length; i++)
+			queries[i] = toFeature(random.nextInt(num_features));
+	}
+
+	private static String toFeature(int i) {
+		return "w[" + (i % 5 - 2) + "]=token" + i;
+	}
+
+	private static long getUsedHeap() {
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	@Benchmark
+	public int lookup() {
+		int sum = 0;
+		for (String query : queries)
+			sum += alphabet.lookupIndex(query, false);
+		return sum;
+	}
+}
@@ -0,0 +1,33 @@
+/**
+ * Benchmark package
+ */
+package kr.jihee.irnlp_toolkit.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runner of all benchmarks with GC profiling (allocation rate per operation)<br>
+ * - run from the project root so that resources/ is found: java -jar benchmark/target/benchmarks.jar [JMH options] [regexp]
+ * 
+ * @author Jihee
+ */
+public class BenchmarkRunner {
+
+	/**
+	 * Main function
+	 * 
+	 * @param args
+	 *            JMH command line options
+	 * @throws RunnerException
+	 * @throws CommandLineOptionException
+	 */
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions cmd = new CommandLineOptions(args);
+		new Runner(new OptionsBuilder().parent(cmd).addProfiler(GCProfiler.class).build()).run();
+	}
+}
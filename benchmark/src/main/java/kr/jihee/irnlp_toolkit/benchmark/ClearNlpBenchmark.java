@@ -0,0 +1,74 @@
+/**
+ * Benchmark package
+ */
+package kr.jihee.irnlp_toolkit.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import kr.jihee.irnlp_toolkit.Env;
+import kr.jihee.irnlp_toolkit.nlp.ClearNlpWrapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.clearnlp.dependency.DEPTree;
+import com.clearnlp.nlp.NLPGetter;
+
+/**
+ * Benchmark of ClearNlpWrapper (one operation processes all sentences of the news sample)<br>
+ * - each operation also includes the preceding steps (tag for parse, tag and parse for label), since ClearNLP components modify the DEPTree in place
+ * 
+ * @author Jihee
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ClearNlpBenchmark {
+
+	ClearNlpWrapper nlp;
+	List<List<String>> sents;
+
+	@Setup
+	public void setup() throws IOException {
+		nlp = new ClearNlpWrapper(Env.CLEARNLP_CFG);
+		nlp.loadAll("tokenize, ssplit, pos, parse, srl");
+		sents = new ArrayList<List<String>>();
+		for (String text : Samples.readNews())
+			sents.addAll(nlp.detect(text));
+	}
+
+	@Benchmark
+	public void tag(Blackhole bh) {
+		for (List<String> toks : sents)
+			bh.consume(nlp.tag(NLPGetter.toDEPTree(toks)));
+	}
+
+	@Benchmark
+	public void parse(Blackhole bh) {
+		for (List<String> toks : sents)
+			bh.consume(nlp.parse(nlp.tag(NLPGetter.toDEPTree(toks))));
+	}
+
+	@Benchmark
+	public void label(Blackhole bh) {
+		for (List<String> toks : sents) {
+			DEPTree units = nlp.parse(nlp.tag(NLPGetter.toDEPTree(toks)));
+			bh.consume(nlp.label(units));
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/**
+ * Benchmark package
+ */
+package kr.jihee.irnlp_toolkit.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import kr.jihee.irnlp_toolkit.Env;
+import kr.jihee.irnlp_toolkit.nlp.HannanumWrapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark of HannanumWrapper (one operation processes all sentences of the Korean sample)
+ * 
+ * @author Jihee
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class HannanumBenchmark {
+
+	HannanumWrapper nlp;
+	List<String> sents;
+
+	@Setup
+	public void setup() throws Exception {
+		nlp = new HannanumWrapper(Env.HANNANUM_CFG);
+		nlp.loadAll("ssplit, pos");
+		sents = nlp.detect(Samples.KOREAN_TEXT);
+	}
+
+	@TearDown
+	public void tearDown() {
+		nlp.unload();
+	}
+
+	@Benchmark
+	public void tag(Blackhole bh) {
+		for (String sent : sents)
+			bh.consume(nlp.tag(sent));
+	}
+}
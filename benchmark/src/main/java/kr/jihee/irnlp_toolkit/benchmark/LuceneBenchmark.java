@@ -0,0 +1,92 @@
+/**
+ * Benchmark package
+ */
+package kr.jihee.irnlp_toolkit.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import kr.jihee.irnlp_toolkit.ir.LuceneWrapper;
+import kr.jihee.irnlp_toolkit.ir.LuceneWrapper.SearchedEntry;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of LuceneWrapper.search over an index of the wikipedia and news samples
+ * 
+ * @author Jihee
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class LuceneBenchmark {
+
+	@Param({ "10", "100" })
+	int k;
+
+	@Param({ "world", "university AND science", "\"south korea\"" })
+	String query_text;
+
+	File index_dir;
+	LuceneWrapper lucene;
+	IndexSearcher searcher;
+	Query query;
+
+	@Setup
+	public void setup() throws IOException, ParseException {
+		index_dir = Files.createTempDirectory("lucene-benchmark").toFile();
+		lucene = new LuceneWrapper(index_dir.getPath());
+		IndexWriter writer = lucene.createIndexWriter(true);
+		int id = 0;
+		for (List<String> docs : Arrays.asList(Samples.readWikipedia(), Samples.readNews()))
+			for (String text : docs) {
+				Document doc = new Document();
+				doc.add(new StringField("label", String.valueOf(id++), Field.Store.YES));
+				doc.add(new TextField("contents", text, Field.Store.YES));
+				writer.addDocument(doc);
+			}
+		writer.close();
+		searcher = lucene.createIndexSearcher();
+		query = lucene.createQueryParser("contents").parse(query_text);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		searcher.getIndexReader().close();
+		lucene.index_dir.close();
+		for (File file : index_dir.listFiles())
+			file.delete();
+		index_dir.delete();
+	}
+
+	@Benchmark
+	public List<SearchedEntry> search() throws IOException {
+		return lucene.search(searcher, query, k);
+	}
+}
@@ -0,0 +1,105 @@
+/**
+ * Benchmark package
+ */
+package kr.jihee.irnlp_toolkit.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import kr.jihee.irnlp_toolkit.ir.LuceneWrapper;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of query latency (p50/p90/p99 in the SampleTime report) against segment count, with and without searching segments in parallel
+ * 
+ * @author Jihee
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class LuceneSegmentBenchmark {
+
+	@Param({ "1", "4", "16", "64" })
+	int num_segments;
+
+	@Param({ "0", "4" })
+	int num_threads;
+
+	@Param({ "100000" })
+	int num_docs;
+
+	File index_dir;
+	LuceneWrapper lucene;
+	ExecutorService executor;
+	IndexSearcher searcher;
+	Query query;
+
+	@Setup
+	public void setup() throws IOException, ParseException {
+		index_dir = Files.createTempDirectory("lucene-segment-benchmark").toFile();
+		lucene = new LuceneWrapper(index_dir.getPath());
+		IndexWriter writer = lucene.createIndexWriter(true, IndexWriterConfig.DEFAULT_MAX_THREAD_STATES, NoMergePolicy.COMPOUND_FILES);
+		List<String> texts = Samples.readNews();
+		int docs_per_segment = num_docs / num_segments;
+		for (int i = 0; i < num_docs; i++) {
+			Document doc = new Document();
+			doc.add(new StringField("label", String.valueOf(i), Field.Store.YES));
+			doc.add(new TextField("contents", texts.get(i % texts.size()), Field.Store.NO));
+			writer.addDocument(doc);
+			if ((i + 1) % docs_per_segment == 0)
+				writer.commit();
+		}
+		writer.close();
+
+		executor = num_threads > 0 ? Executors.newFixedThreadPool(num_threads) : null;
+		searcher = executor != null ? lucene.createIndexSearcher(executor) : lucene.createIndexSearcher();
+		query = lucene.createQueryParser("contents").parse("samsung OR google OR innovative");
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		searcher.getIndexReader().close();
+		if (executor != null)
+			executor.shutdown();
+		lucene.index_dir.close();
+		for (File file : index_dir.listFiles())
+			file.delete();
+		index_dir.delete();
+	}
+
+	@Benchmark
+	public ScoreDoc[] search() throws IOException {
+		return lucene.searchScores(searcher, query, 10);
+	}
+}
@@ -0,0 +1,56 @@
+/**
+ * Benchmark package
+ */
+package kr.jihee.irnlp_toolkit.benchmark;
+
+import java.io.FileNotFoundException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import kr.jihee.irnlp_toolkit.ml.MalletWrapper.CRFResult;
+import kr.jihee.irnlp_toolkit.ml.MalletWrapper.MalletCRFWrapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of MalletCRFWrapper (one operation decodes all sentences of np_test.txt with a model trained on np_train.txt)
+ * 
+ * @author Jihee
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MalletBenchmark {
+
+	@Param({ "1", "5" })
+	int num_best;
+
+	MalletCRFWrapper crf;
+
+	@Setup
+	public void setup() throws FileNotFoundException {
+		MalletCRFWrapper.DEFAULT_TARGET_PROCESSING = true;
+		crf = new MalletCRFWrapper();
+		crf.setTrainData(Samples.CRF_TRAIN_FILE);
+		crf.train(500);
+		crf.setTestData(Samples.CRF_TEST_FILE);
+	}
+
+	@Benchmark
+	public List<CRFResult> test() {
+		return crf.test(num_best);
+	}
+}
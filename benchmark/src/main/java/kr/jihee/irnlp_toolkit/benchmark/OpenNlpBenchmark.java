@@ -0,0 +1,89 @@
+/**
+ * Benchmark package
+ */
+package kr.jihee.irnlp_toolkit.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import kr.jihee.irnlp_toolkit.Env;
+import kr.jihee.irnlp_toolkit.nlp.OpenNlpWrapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark of OpenNlpWrapper (one operation processes all sentences of the news sample)
+ * 
+ * @author Jihee
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class OpenNlpBenchmark {
+
+	OpenNlpWrapper nlp;
+	List<String> sents;
+	List<String[]> toks;
+	List<String[]> tags;
+
+	@Setup
+	public void setup() throws IOException {
+		nlp = new OpenNlpWrapper(Env.OPENNLP_CFG);
+		nlp.loadAll("ssplit, tokenize, pos, chunk, parse, ner");
+		sents = new ArrayList<String>();
+		toks = new ArrayList<String[]>();
+		tags = new ArrayList<String[]>();
+		for (String text : Samples.readNews())
+			for (String sent : nlp.detect(text)) {
+				sents.add(sent);
+				toks.add(nlp.tokenize(sent));
+				tags.add(nlp.tag(toks.get(toks.size() - 1)));
+			}
+	}
+
+	@Benchmark
+	public void tokenize(Blackhole bh) {
+		for (String sent : sents)
+			bh.consume(nlp.tokenize(sent));
+	}
+
+	@Benchmark
+	public void tag(Blackhole bh) {
+		for (String[] t : toks)
+			bh.consume(nlp.tag(t));
+	}
+
+	@Benchmark
+	public void chunk(Blackhole bh) {
+		for (int i = 0; i < toks.size(); i++)
+			bh.consume(nlp.chunk(toks.get(i), tags.get(i)));
+	}
+
+	@Benchmark
+	public void parse(Blackhole bh) {
+		for (String sent : sents)
+			bh.consume(nlp.parse(sent));
+	}
+
+	@Benchmark
+	public void recognize(Blackhole bh) {
+		for (String[] t : toks)
+			bh.consume(nlp.recognize(t));
+		nlp.clearRecognizers();
+	}
+}
@@ -0,0 +1,66 @@
+/**
+ * Benchmark package
+ */
+package kr.jihee.irnlp_toolkit.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import kr.jihee.irnlp_toolkit.Env;
+
+/**
+ * Sample data for benchmarks, read from the bundled resources/sample corpora
+ * 
+ * @author Jihee
+ */
+public class Samples {
+
+	public static final String NEWS_FILE = Env.SAMPLE_DIR + "news.txt";
+	public static final String WIKIPEDIA_DIR = Env.SAMPLE_DIR + "wikipedia";
+	public static final String CRF_TRAIN_FILE = Env.SAMPLE_DIR + "np_train.txt";
+	public static final String CRF_TEST_FILE = Env.SAMPLE_DIR + "np_test.txt";
+	public static final String KOREAN_TEXT = "철수는 영희를 좋아한다. 그녀도 그를 역시 좋아한다.";
+
+	/**
+	 * Read non-empty lines of a text file
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static List<String> readLines(String file) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		for (String line : Files.readAllLines(new File(file).toPath(), Charset.forName("UTF-8")))
+			if (!line.trim().isEmpty())
+				lines.add(line.trim());
+		return lines;
+	}
+
+	/**
+	 * Read the lines of the news sample, which are used as documents
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	public static List<String> readNews() throws IOException {
+		return readLines(NEWS_FILE);
+	}
+
+	/**
+	 * Read the documents of the wikipedia sample
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	public static List<String> readWikipedia() throws IOException {
+		List<String> docs = new ArrayList<String>();
+		for (File file : new File(WIKIPEDIA_DIR).listFiles())
+			if (file.isFile())
+				docs.add(new String(Files.readAllBytes(file.toPath()), Charset.forName("UTF-8")));
+		return docs;
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ * Benchmark package
+ */
+package kr.jihee.irnlp_toolkit.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import kr.jihee.irnlp_toolkit.Env;
+import kr.jihee.irnlp_toolkit.nlp.StanfordNlpWrapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.stanford.nlp.ling.HasWord;
+
+/**
+ * Benchmark of StanfordNlpWrapper (one operation processes all lines of the news sample)
+ * 
+ * @author Jihee
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class StanfordNlpBenchmark {
+
+	StanfordNlpWrapper nlp;
+	List<String> texts;
+	List<List<HasWord>> sents;
+
+	@Setup
+	public void setup() throws IOException {
+		nlp = new StanfordNlpWrapper(Env.STANFORDNLP_CFG);
+		nlp.loadPosTagger();
+		nlp.loadLexParser();
+		nlp.loadAll("tokenize, ssplit, pos, lemma, ner, parse, dcoref");
+		texts = Samples.readNews();
+		sents = new ArrayList<List<HasWord>>();
+		for (String text : texts)
+			sents.addAll(StanfordNlpWrapper.detect(text));
+	}
+
+	@Benchmark
+	public void tag(Blackhole bh) {
+		for (List<HasWord> sent : sents)
+			bh.consume(nlp.tag(sent));
+	}
+
+	@Benchmark
+	public void parse(Blackhole bh) {
+		for (List<HasWord> sent : sents)
+			bh.consume(nlp.parse(sent));
+	}
+
+	@Benchmark
+	public void annotate(Blackhole bh) {
+		for (String text : texts)
+			bh.consume(nlp.annotate(text));
+	}
+}
@@ -0,0 +1,207 @@
+/**
+ * Information Retrieval package
+ */
+package kr.jihee.irnlp_toolkit.ir;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import kr.jihee.irnlp_toolkit.nlp.HannanumWrapper;
+import kr.jihee.irnlp_toolkit.nlp.HannanumWrapper.TaggedMorp;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.LowerCaseFilter;
+import org.apache.lucene.analysis.core.TypeTokenFilter;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.util.Version;
+
+/**
+ * Lucene Analyzer for Korean text using morphemes(형태소) analyzed by HanNanum as terms<br>
+ * - each eojeol(어절) is tagged separately and memoized, and the POS tag of a morpheme is kept as its token type<br>
+ * - HanNanum workflows are not thread-safe, so each analyzing thread uses its own POS tagger: the given one for the first
+ * thread, and a copy loaded with the same properties for each other thread (unloaded by close())
+ * 
+ * @author Jihee
+ */
+public class HannanumAnalyzer extends Analyzer {
+
+	public static long DEFAULT_CACHE_SIZE = 100000;
+	public static List<String> DEFAULT_POS_TAGS = Arrays.asList("NC", "NQ", "F", "PV", "PA"); // KAIST 22 tags of SimplePOSResult22
+
+	private final HannanumWrapper hannanum;
+	private final AtomicReference<HannanumWrapper> unclaimed;
+	private final List<HannanumWrapper> loaded = Collections.synchronizedList(new ArrayList<HannanumWrapper>());
+	private final ThreadLocal<HannanumWrapper> tagger = new ThreadLocal<HannanumWrapper>() {
+		protected HannanumWrapper initialValue() {
+			HannanumWrapper hannanum = unclaimed.getAndSet(null);
+			if (hannanum != null)
+				return hannanum;
+			try {
+				hannanum = new HannanumWrapper(HannanumAnalyzer.this.hannanum.prop);
+				hannanum.loadPosTagger();
+			} catch (Exception e) {
+				throw new RuntimeException("Failed to load a HanNanum POS tagger for " + Thread.currentThread().getName(), e);
+			}
+			loaded.add(hannanum);
+			return hannanum;
+		}
+	};
+	private final Set<String> pos_tags;
+	private final LoadingCache<String, List<TaggedMorp>> cache;
+
+	/**
+	 * Constructor with the default POS tags (common and proper nouns, foreign words, verbs and adjectives)
+	 * 
+	 * @param hannanum
+	 *            HannanumWrapper with a loaded POS tagger, not to be used elsewhere while this analyzer is in use
+	 */
+	public HannanumAnalyzer(HannanumWrapper hannanum) {
+		this(hannanum, DEFAULT_POS_TAGS, DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param hannanum
+	 *            HannanumWrapper with a loaded POS tagger, not to be used elsewhere while this analyzer is in use
+	 * @param pos_tags
+	 *            POS tags of morphemes to index (null for all morphemes)
+	 * @param cache_size
+	 *            maximum number of eojeol(어절) to memoize
+	 */
+	public HannanumAnalyzer(final HannanumWrapper hannanum, List<String> pos_tags, long cache_size) {
+		this.hannanum = hannanum;
+		this.unclaimed = new AtomicReference<HannanumWrapper>(hannanum);
+		this.pos_tags = pos_tags != null ? new HashSet<String>(pos_tags) : null;
+		this.cache = CacheBuilder.newBuilder().maximumSize(cache_size).recordStats().build(new CacheLoader<String, List<TaggedMorp>>() {
+			public List<TaggedMorp> load(String eojeol) {
+				return analyze(eojeol);
+			}
+		});
+	}
+
+	/**
+	 * Analyze an eojeol(어절) into tagged morphemes(형태소) without memoization
+	 * 
+	 * @param eojeol
+	 * @return
+	 */
+	public List<TaggedMorp> analyze(String eojeol) {
+		List<HannanumWrapper.TaggedWord> taggedWords = tagger.get().tag(eojeol);
+		if (taggedWords == null)
+			return Collections.emptyList();
+		return HannanumWrapper.toTaggedMorps(taggedWords);
+	}
+
+	/**
+	 * Get hit/miss statistics of the eojeol(어절) cache
+	 * 
+	 * @return
+	 */
+	public CacheStats getCacheStats() {
+		return cache.stats();
+	}
+
+	/**
+	 * Close the analyzer, unloading the POS taggers it loaded for other threads (the given one is left to its owner)
+	 */
+	public void close() {
+		super.close();
+		synchronized (loaded) {
+			for (HannanumWrapper hannanum : loaded)
+				hannanum.unload();
+			loaded.clear();
+		}
+	}
+
+	protected TokenStreamComponents createComponents(String fieldName, Reader reader) {
+		Tokenizer source = new HannanumTokenizer(reader, cache);
+		TokenStream result = new LowerCaseFilter(Version.LUCENE_48, source);
+		if (pos_tags != null)
+			result = new TypeTokenFilter(Version.LUCENE_48, result, pos_tags, true);
+		return new TokenStreamComponents(source, result);
+	}
+
+	/**
+	 * Tokenizer emitting tagged morphemes(형태소) of whitespace-separated eojeol(어절)
+	 * 
+	 * @author Jihee
+	 */
+	private static class HannanumTokenizer extends Tokenizer {
+
+		private static final Pattern EOJEOL = Pattern.compile("\\S+");
+
+		private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+		private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+		private final TypeAttribute typeAtt = addAttribute(TypeAttribute.class);
+		private final LoadingCache<String, List<TaggedMorp>> cache;
+		private String text;
+		private Matcher matcher;
+		private Iterator<TaggedMorp> morps;
+		private int start;
+		private int end;
+
+		public HannanumTokenizer(Reader reader, LoadingCache<String, List<TaggedMorp>> cache) {
+			super(reader);
+			this.cache = cache;
+		}
+
+		public boolean incrementToken() throws IOException {
+			clearAttributes();
+			while (!morps.hasNext()) {
+				if (!matcher.find())
+					return false;
+				morps = cache.getUnchecked(matcher.group()).iterator();
+				start = correctOffset(matcher.start());
+				end = correctOffset(matcher.end());
+			}
+			TaggedMorp morp = morps.next();
+			termAtt.setEmpty().append(morp.morp);
+			typeAtt.setType(morp.tag);
+			offsetAtt.setOffset(start, end); // a morpheme can differ from its surface, so it takes the offsets of the eojeol
+			return true;
+		}
+
+		public void reset() throws IOException {
+			super.reset();
+			StringBuilder sb = new StringBuilder();
+			char[] buffer = new char[4096];
+			for (int n; (n = input.read(buffer)) != -1;)
+				sb.append(buffer, 0, n);
+			text = sb.toString();
+			matcher = EOJEOL.matcher(text);
+			morps = Collections.<TaggedMorp> emptyList().iterator();
+		}
+
+		public void end() throws IOException {
+			super.end();
+			int final_offset = correctOffset(text.length());
+			offsetAtt.setOffset(final_offset, final_offset);
+		}
+
+		public void close() throws IOException {
+			super.close();
+			text = null;
+			matcher = null;
+		}
+	}
+}
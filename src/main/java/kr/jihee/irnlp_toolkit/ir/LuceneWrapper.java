@@ -6,21 +6,63 @@ package kr.jihee.irnlp_toolkit.ir;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import kr.jihee.irnlp_toolkit.Env;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.StoredField;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TrackingIndexWriter;
+import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ReferenceManager.RefreshListener;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.CompoundFileDirectory;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.NRTCachingDirectory;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.Version;
 
 /**
@@ -31,7 +73,31 @@ import org.apache.lucene.util.Version;
  */
 public class LuceneWrapper {
 
-	public FSDirectory index_dir;
+	public static double DEFAULT_MAX_STALE_SEC = 1.0;
+	public static double DEFAULT_MIN_STALE_SEC = 0.025;
+	public static long DEFAULT_REPORT_INTERVAL_SEC = 10;
+	public static int DEFAULT_PAGE_SIZE = 1000;
+	public static int DEFAULT_MMAP_CHUNK_SIZE = MMapDirectory.DEFAULT_MAX_BUFF;
+	public static double DEFAULT_NRT_MAX_MERGE_SIZE_MB = 5.0;
+	public static double DEFAULT_NRT_MAX_CACHED_MB = 60.0;
+	public static List<String> HOT_FILE_EXTENSIONS = Arrays.asList("tip", "tim", "nvd", "nvm");
+
+	public FSDirectory index_dir; // file system directory of the index, shared by getDirectory() unless NRT-cached
+	private Directory directory;
+	public Analyzer analyzer = new StandardAnalyzer(Version.LUCENE_48);
+	public TrackingIndexWriter writer;
+	public SearcherManager manager;
+	private ControlledRealTimeReopenThread<IndexSearcher> reopener;
+	private Cache<String, List<SearchedEntry>> cache;
+	private final RefreshListener invalidator = new RefreshListener() {
+		public void beforeRefresh() {
+		}
+
+		public void afterRefresh(boolean didRefresh) {
+			if (didRefresh && cache != null)
+				cache.invalidateAll();
+		}
+	};
 
 	/**
 	 * SearchedEntry
@@ -42,39 +108,703 @@ public class LuceneWrapper {
 
 		public Document doc;
 		public float score;
+		public int docID = -1;
+		private IndexSearcher searcher;
+		private Set<String> fields;
 
 		public SearchedEntry(Document doc, float score) {
 			this.doc = doc;
 			this.score = score;
 		}
+
+		public SearchedEntry(Document doc, int docID, float score) {
+			this.doc = doc;
+			this.docID = docID;
+			this.score = score;
+		}
+
+		/**
+		 * Constructor of a lazy entry, whose stored fields are loaded on the first call of getDoc()
+		 * 
+		 * @param searcher
+		 * @param docID
+		 * @param score
+		 * @param fields
+		 *            fields to load (null for all fields)
+		 */
+		public SearchedEntry(IndexSearcher searcher, int docID, float score, Set<String> fields) {
+			this.searcher = searcher;
+			this.docID = docID;
+			this.score = score;
+			this.fields = fields;
+		}
+
+		/**
+		 * Get the document, loading its stored fields if not loaded yet<br>
+		 * - the searcher of a lazy entry must stay open (or acquired) until this is called
+		 * 
+		 * @return
+		 * @throws IOException
+		 */
+		public Document getDoc() throws IOException {
+			if (doc == null && searcher != null) {
+				doc = fields == null ? searcher.doc(docID) : searcher.doc(docID, fields);
+				searcher = null;
+			}
+			return doc;
+		}
+	}
+
+	/**
+	 * Handler of searched entries, called in the order of ranking
+	 * 
+	 * @author Jihee
+	 */
+	public static interface SearchHandler {
+		/**
+		 * @param searched_entry
+		 * @return false to stop searching
+		 * @throws IOException
+		 */
+		public boolean handle(SearchedEntry searched_entry) throws IOException;
+	}
+
+	/**
+	 * Type of Directory implementation
+	 * 
+	 * @author Jihee
+	 */
+	public static enum DirectoryType {
+		/** best one for the platform, chosen by FSDirectory.open() */
+		FS,
+		/** memory-mapped access (zero-copy, backed by the OS page cache) */
+		MMAP,
+		/** positional reads through FileChannel */
+		NIOFS
 	}
 
 	public LuceneWrapper(String index_dir) throws IOException {
 		this.index_dir = FSDirectory.open(new File(index_dir));
+		this.directory = this.index_dir;
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param index_dir
+	 * @param type
+	 * @param nrt_caching
+	 *            if true, small newly flushed segments are cached in RAM by NRTCachingDirectory
+	 * @throws IOException
+	 */
+	public LuceneWrapper(String index_dir, DirectoryType type, boolean nrt_caching) throws IOException {
+		if (type == DirectoryType.MMAP)
+			this.index_dir = new MMapDirectory(new File(index_dir), null, DEFAULT_MMAP_CHUNK_SIZE);
+		else if (type == DirectoryType.NIOFS)
+			this.index_dir = new NIOFSDirectory(new File(index_dir));
+		else
+			this.index_dir = FSDirectory.open(new File(index_dir));
+		this.directory = nrt_caching ? new NRTCachingDirectory(this.index_dir, DEFAULT_NRT_MAX_MERGE_SIZE_MB, DEFAULT_NRT_MAX_CACHED_MB) : this.index_dir;
+	}
+
+	/**
+	 * Get the Directory used by writers and searchers, which is index_dir wrapped by NRTCachingDirectory if requested<br>
+	 * - index_dir alone sees committed changes only, since flushed segments can stay in RAM until commit
+	 * 
+	 * @return
+	 */
+	public Directory getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Preload hot index files (term dictionaries and norms by default) into the OS page cache by reading them through
+	 * 
+	 * @return number of bytes read
+	 * @throws IOException
+	 */
+	public long preload() throws IOException {
+		return preload(HOT_FILE_EXTENSIONS);
+	}
+
+	/**
+	 * Preload index files with the given extensions into the OS page cache by reading them through
+	 * 
+	 * @param extensions
+	 *            file extensions (e.g. tip, tim, nvd, nvm, doc, cfs)
+	 * @return number of bytes read
+	 * @throws IOException
+	 */
+	public long preload(List<String> extensions) throws IOException {
+		return preload(index_dir, extensions, new byte[1 << 16]); // files cached in RAM by NRTCachingDirectory need no preloading
+	}
+
+	private static long preload(Directory dir, List<String> extensions, byte[] buffer) throws IOException {
+		long total = 0;
+		for (String file : dir.listAll()) {
+			String ext = IndexFileNames.getExtension(file);
+			if (IndexFileNames.COMPOUND_FILE_EXTENSION.equals(ext) && !extensions.contains(ext)) {
+				// compound files are preloaded partially, only the hot files inside them
+				CompoundFileDirectory cfs = new CompoundFileDirectory(dir, file, IOContext.READ, false);
+				try {
+					total += preload(cfs, extensions, buffer);
+				} finally {
+					cfs.close();
+				}
+			} else if (extensions.contains(ext)) {
+				IndexInput input = dir.openInput(file, IOContext.READ);
+				try {
+					long length = input.length();
+					for (long pos = 0; pos < length; pos += buffer.length)
+						input.readBytes(buffer, 0, (int) Math.min(buffer.length, length - pos));
+					total += length;
+				} finally {
+					input.close();
+				}
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Set analyzers used by index writers and query parsers created after this call
+	 * 
+	 * @param default_analyzer
+	 *            analyzer for fields not in field_analyzers
+	 * @param field_analyzers
+	 *            analyzer for each field (e.g. HannanumAnalyzer for Korean text fields)
+	 */
+	public void setAnalyzer(Analyzer default_analyzer, Map<String, Analyzer> field_analyzers) {
+		analyzer = field_analyzers != null && !field_analyzers.isEmpty() ? new PerFieldAnalyzerWrapper(default_analyzer, field_analyzers) : default_analyzer;
+		invalidateQueryCache();
 	}
 
 	public IndexWriter createIndexWriter(boolean create) throws IOException {
-		IndexWriterConfig iwc = new IndexWriterConfig(Version.LUCENE_48, new StandardAnalyzer(Version.LUCENE_48));
+		return createIndexWriter(create, IndexWriterConfig.DEFAULT_MAX_THREAD_STATES, null);
+	}
+
+	/**
+	 * Create an IndexWriter for bulk indexing
+	 * 
+	 * @param create
+	 * @param max_thread_states
+	 *            maximum number of threads indexing at once
+	 * @param merge_policy
+	 *            merge policy (null for the default TieredMergePolicy)
+	 * @return
+	 * @throws IOException
+	 */
+	public IndexWriter createIndexWriter(boolean create, int max_thread_states, MergePolicy merge_policy) throws IOException {
+		IndexWriterConfig iwc = new IndexWriterConfig(Version.LUCENE_48, analyzer);
 		iwc.setOpenMode(create ? OpenMode.CREATE : OpenMode.CREATE_OR_APPEND);
 		iwc.setRAMBufferSizeMB(Env.LUCENE_MEM);
-		return new IndexWriter(index_dir, iwc);
+		iwc.setMaxThreadStates(max_thread_states);
+		if (merge_policy != null)
+			iwc.setMergePolicy(merge_policy);
+		return new IndexWriter(directory, iwc);
+	}
+
+	/**
+	 * Index a stream of documents by multiple threads sharing the writer (analysis runs in the indexing threads)<br>
+	 * - the writer is committed every commit_interval documents and at the end, and docs/sec is reported every DEFAULT_REPORT_INTERVAL_SEC seconds
+	 * 
+	 * @param writer
+	 * @param docs
+	 * @param num_threads
+	 * @param commit_interval
+	 *            number of documents between commits (0 for committing only at the end)
+	 * @return number of indexed documents
+	 * @throws IOException
+	 * @throws InterruptedException
+	 * @throws RuntimeException
+	 *             thrown as is by an indexing thread (e.g. by the document iterator or the analyzer)
+	 */
+	public long bulkIndex(final IndexWriter writer, final Iterator<? extends Iterable<? extends IndexableField>> docs, int num_threads, final long commit_interval) throws IOException, InterruptedException {
+		final AtomicLong count = new AtomicLong();
+		final AtomicBoolean failed = new AtomicBoolean();
+		long start = System.nanoTime();
+		ExecutorService pool = Executors.newFixedThreadPool(num_threads);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (int i = 0; i < num_threads; i++)
+			futures.add(pool.submit(new Callable<Void>() {
+				public Void call() throws IOException {
+					try {
+						while (!failed.get()) {
+							Iterable<? extends IndexableField> doc;
+							synchronized (docs) {
+								if (!docs.hasNext())
+									break;
+								doc = docs.next();
+							}
+							writer.addDocument(doc);
+							long n = count.incrementAndGet();
+							if (commit_interval > 0 && n % commit_interval == 0)
+								writer.commit();
+						}
+						return null;
+					} catch (IOException e) {
+						failed.set(true);
+						throw e;
+					} catch (RuntimeException e) {
+						failed.set(true);
+						throw e;
+					} catch (Error e) {
+						failed.set(true);
+						throw e;
+					}
+				}
+			}));
+		pool.shutdown();
+		try {
+			while (!pool.awaitTermination(DEFAULT_REPORT_INTERVAL_SEC, TimeUnit.SECONDS))
+				reportProgress(count.get(), start);
+			for (Future<Void> future : futures)
+				future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+		writer.commit();
+		reportProgress(count.get(), start);
+		return count.get();
+	}
+
+	private static void reportProgress(long count, long start) {
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		System.err.printf("Indexed %d documents in %.1f sec (%.1f docs/sec)\n", count, elapsed, elapsed > 0 ? count / elapsed : 0);
 	}
 
 	public IndexSearcher createIndexSearcher() throws IOException {
-		return new IndexSearcher(DirectoryReader.open(index_dir));
+		return new IndexSearcher(DirectoryReader.open(directory));
+	}
+
+	/**
+	 * Create an IndexSearcher searching segments in parallel using the executor (owned by the caller)
+	 * 
+	 * @param executor
+	 * @return
+	 * @throws IOException
+	 */
+	public IndexSearcher createIndexSearcher(ExecutorService executor) throws IOException {
+		return new IndexSearcher(DirectoryReader.open(directory), executor);
+	}
+
+	/**
+	 * SearcherFactory creating IndexSearchers which search segments in parallel using an executor
+	 * 
+	 * @author Jihee
+	 */
+	public static class ParallelSearcherFactory extends SearcherFactory {
+
+		private final ExecutorService executor;
+
+		public ParallelSearcherFactory(ExecutorService executor) {
+			this.executor = executor;
+		}
+
+		public IndexSearcher newSearcher(IndexReader reader) throws IOException {
+			return new IndexSearcher(reader, executor);
+		}
 	}
 
 	public QueryParser createQueryParser(String field) {
-		return new QueryParser(Version.LUCENE_48, field, new StandardAnalyzer(Version.LUCENE_48));
+		return new QueryParser(Version.LUCENE_48, field, analyzer);
 	}
 
 	public List<SearchedEntry> search(IndexSearcher searcher, Query query, int k) throws IOException {
+		return search(searcher, query, k, null);
+	}
+
+	/**
+	 * Search documents, loading only the given stored fields
+	 * 
+	 * @param searcher
+	 * @param query
+	 * @param k
+	 * @param fields
+	 *            fields to load (null for all fields)
+	 * @return
+	 * @throws IOException
+	 */
+	public List<SearchedEntry> search(IndexSearcher searcher, Query query, int k, Set<String> fields) throws IOException {
+		if (cache != null) {
+			String key = toCacheKey(searcher, query.toString(), k, fields);
+			List<SearchedEntry> searched_entries = cache.getIfPresent(key);
+			if (searched_entries == null)
+				cache.put(key, searched_entries = searchDocs(searcher, query, k, fields));
+			return copyEntries(searched_entries);
+		}
+		return searchDocs(searcher, query, k, fields);
+	}
+
+	/**
+	 * Search documents with a query text, which is parsed only if the result is not cached
+	 * 
+	 * @param searcher
+	 * @param field
+	 *            default field of the query
+	 * @param query_text
+	 * @param k
+	 * @return
+	 * @throws IOException
+	 * @throws ParseException
+	 */
+	public List<SearchedEntry> search(IndexSearcher searcher, String field, String query_text, int k) throws IOException, ParseException {
+		if (cache != null) {
+			String key = toCacheKey(searcher, field + ":(" + query_text.trim().replaceAll("\\s+", " ") + ")", k, null);
+			List<SearchedEntry> searched_entries = cache.getIfPresent(key);
+			if (searched_entries == null)
+				cache.put(key, searched_entries = searchDocs(searcher, createQueryParser(field).parse(query_text), k, null));
+			return copyEntries(searched_entries);
+		}
+		return searchDocs(searcher, createQueryParser(field).parse(query_text), k, null);
+	}
+
+	/**
+	 * Copy cached entries with their documents and stored fields, so that a caller modifying them cannot change the cached
+	 * result
+	 * 
+	 * @param searched_entries
+	 * @return
+	 */
+	private static List<SearchedEntry> copyEntries(List<SearchedEntry> searched_entries) {
+		ArrayList<SearchedEntry> copied_entries = new ArrayList<SearchedEntry>(searched_entries.size());
+		for (SearchedEntry searched_entry : searched_entries) {
+			Document doc = new Document();
+			for (IndexableField field : searched_entry.doc.getFields())
+				doc.add(copyField(field));
+			copied_entries.add(new SearchedEntry(doc, searched_entry.docID, searched_entry.score));
+		}
+		return copied_entries;
+	}
+
+	/**
+	 * Copy a stored field loaded by IndexSearcher.doc(), which is a StoredField for numeric and binary values and a Field
+	 * of its own FieldType for string values
+	 * 
+	 * @param field
+	 * @return
+	 */
+	private static Field copyField(IndexableField field) {
+		Number number = field.numericValue();
+		if (number instanceof Integer)
+			return new StoredField(field.name(), number.intValue());
+		if (number instanceof Long)
+			return new StoredField(field.name(), number.longValue());
+		if (number instanceof Float)
+			return new StoredField(field.name(), number.floatValue());
+		if (number instanceof Double)
+			return new StoredField(field.name(), number.doubleValue());
+		BytesRef bytes = field.binaryValue();
+		if (bytes != null)
+			return new StoredField(field.name(), BytesRef.deepCopyOf(bytes));
+		return new Field(field.name(), field.stringValue(), new FieldType((FieldType) field.fieldType()));
+	}
+
+	private List<SearchedEntry> searchDocs(IndexSearcher searcher, Query query, int k, Set<String> fields) throws IOException {
 		ArrayList<SearchedEntry> searched_entries = new ArrayList<SearchedEntry>();
 		for (ScoreDoc searched_doc : searcher.search(query, k).scoreDocs) {
-			Document doc = searcher.doc(searched_doc.doc);
+			Document doc = fields == null ? searcher.doc(searched_doc.doc) : searcher.doc(searched_doc.doc, fields);
 			float score = searched_doc.score;
-			searched_entries.add(new SearchedEntry(doc, score));
+			searched_entries.add(new SearchedEntry(doc, searched_doc.doc, score));
 		}
 		return searched_entries;
 	}
+
+	/**
+	 * Search documents without loading stored fields until SearchedEntry.getDoc() is called
+	 * 
+	 * @param searcher
+	 * @param query
+	 * @param k
+	 * @param fields
+	 *            fields to load (null for all fields)
+	 * @return
+	 * @throws IOException
+	 */
+	public List<SearchedEntry> searchLazily(IndexSearcher searcher, Query query, int k, Set<String> fields) throws IOException {
+		ArrayList<SearchedEntry> searched_entries = new ArrayList<SearchedEntry>();
+		for (ScoreDoc searched_doc : searcher.search(query, k).scoreDocs)
+			searched_entries.add(new SearchedEntry(searcher, searched_doc.doc, searched_doc.score, fields));
+		return searched_entries;
+	}
+
+	/**
+	 * Search doc IDs and scores only, without touching stored fields
+	 * 
+	 * @param searcher
+	 * @param query
+	 * @param k
+	 * @return
+	 * @throws IOException
+	 */
+	public ScoreDoc[] searchScores(IndexSearcher searcher, Query query, int k) throws IOException {
+		return searcher.search(query, k).scoreDocs;
+	}
+
+	/**
+	 * Search a page of top documents ranked after the given one (a searchAfter cursor)
+	 * 
+	 * @param searcher
+	 * @param query
+	 * @param after
+	 *            last ScoreDoc of the previous page (null for the first page)
+	 * @param page_size
+	 * @return
+	 * @throws IOException
+	 */
+	public ScoreDoc[] searchPage(IndexSearcher searcher, Query query, ScoreDoc after, int page_size) throws IOException {
+		TopDocs top_docs = after == null ? searcher.search(query, page_size) : searcher.searchAfter(after, query, page_size);
+		return top_docs.scoreDocs;
+	}
+
+	/**
+	 * Search top-k documents page by page of DEFAULT_PAGE_SIZE and pass them to the handler
+	 * 
+	 * @param searcher
+	 * @param query
+	 * @param k
+	 * @param fields
+	 *            fields to load (null for all fields)
+	 * @param handler
+	 * @return number of handled entries
+	 * @throws IOException
+	 */
+	public int search(IndexSearcher searcher, Query query, int k, Set<String> fields, SearchHandler handler) throws IOException {
+		return search(searcher, query, k, DEFAULT_PAGE_SIZE, fields, handler);
+	}
+
+	/**
+	 * Search top-k documents page by page and pass them to the handler without materializing the whole list<br>
+	 * - memory is bounded by page_size, while the query is re-executed for each page
+	 * 
+	 * @param searcher
+	 * @param query
+	 * @param k
+	 * @param page_size
+	 * @param fields
+	 *            fields to load (null for all fields)
+	 * @param handler
+	 * @return number of handled entries
+	 * @throws IOException
+	 */
+	public int search(IndexSearcher searcher, Query query, int k, int page_size, Set<String> fields, SearchHandler handler) throws IOException {
+		int count = 0;
+		ScoreDoc after = null;
+		while (count < k) {
+			int n = Math.min(page_size, k - count);
+			ScoreDoc[] searched_docs = searchPage(searcher, query, after, n);
+			for (ScoreDoc searched_doc : searched_docs) {
+				Document doc = fields == null ? searcher.doc(searched_doc.doc) : searcher.doc(searched_doc.doc, fields);
+				count++;
+				if (!handler.handle(new SearchedEntry(doc, searched_doc.doc, searched_doc.score)))
+					return count;
+			}
+			if (searched_docs.length < n)
+				break;
+			after = searched_docs[searched_docs.length - 1];
+		}
+		return count;
+	}
+
+	/**
+	 * Start the managed search mode: an owned IndexWriter and near-real-time searchers refreshed in background
+	 * 
+	 * @param create
+	 * @throws IOException
+	 */
+	public void openManagedSearcher(boolean create) throws IOException {
+		openManagedSearcher(create, DEFAULT_MAX_STALE_SEC, DEFAULT_MIN_STALE_SEC);
+	}
+
+	/**
+	 * Start the managed search mode: an owned IndexWriter and near-real-time searchers refreshed in background
+	 * 
+	 * @param create
+	 * @param max_stale_sec
+	 *            maximum staleness of searchers when nobody is waiting for a generation
+	 * @param min_stale_sec
+	 *            minimum staleness of searchers when somebody is waiting for a generation
+	 * @throws IOException
+	 */
+	public void openManagedSearcher(boolean create, double max_stale_sec, double min_stale_sec) throws IOException {
+		openManagedSearcher(create, max_stale_sec, min_stale_sec, null);
+	}
+
+	/**
+	 * Start the managed search mode: an owned IndexWriter and near-real-time searchers refreshed in background
+	 * 
+	 * @param create
+	 * @param max_stale_sec
+	 *            maximum staleness of searchers when nobody is waiting for a generation
+	 * @param min_stale_sec
+	 *            minimum staleness of searchers when somebody is waiting for a generation
+	 * @param executor
+	 *            executor to search segments in parallel (null for searching on the calling thread)
+	 * @throws IOException
+	 */
+	public void openManagedSearcher(boolean create, double max_stale_sec, double min_stale_sec, ExecutorService executor) throws IOException {
+		closeManagedSearcher();
+		writer = new TrackingIndexWriter(createIndexWriter(create));
+		manager = new SearcherManager(writer.getIndexWriter(), true, executor != null ? new ParallelSearcherFactory(executor) : new SearcherFactory());
+		manager.addListener(invalidator);
+		reopener = new ControlledRealTimeReopenThread<IndexSearcher>(writer, manager, max_stale_sec, min_stale_sec);
+		reopener.setName("LuceneWrapper-reopener");
+		reopener.setDaemon(true);
+		reopener.start();
+	}
+
+	/**
+	 * Stop the managed search mode, and close the owned IndexWriter
+	 * 
+	 * @throws IOException
+	 */
+	public void closeManagedSearcher() throws IOException {
+		if (reopener != null)
+			reopener.close();
+		if (manager != null)
+			manager.close();
+		if (writer != null)
+			writer.getIndexWriter().close();
+		reopener = null;
+		manager = null;
+		writer = null;
+	}
+
+	/**
+	 * Add a document through the owned IndexWriter
+	 * 
+	 * @param doc
+	 * @return indexing generation, which can be passed to waitForGeneration()
+	 * @throws IOException
+	 */
+	public long addDocument(Iterable<? extends IndexableField> doc) throws IOException {
+		return writer.addDocument(doc);
+	}
+
+	/**
+	 * Update documents containing the term through the owned IndexWriter
+	 * 
+	 * @param term
+	 * @param doc
+	 * @return indexing generation, which can be passed to waitForGeneration()
+	 * @throws IOException
+	 */
+	public long updateDocument(Term term, Iterable<? extends IndexableField> doc) throws IOException {
+		return writer.updateDocument(term, doc);
+	}
+
+	/**
+	 * Delete documents containing the term through the owned IndexWriter
+	 * 
+	 * @param term
+	 * @return indexing generation, which can be passed to waitForGeneration()
+	 * @throws IOException
+	 */
+	public long deleteDocuments(Term term) throws IOException {
+		return writer.deleteDocuments(term);
+	}
+
+	/**
+	 * Wait until searchers reflect all changes up to the generation
+	 * 
+	 * @param generation
+	 * @throws InterruptedException
+	 */
+	public void waitForGeneration(long generation) throws InterruptedException {
+		reopener.waitForGeneration(generation);
+	}
+
+	/**
+	 * Commit the changes of the owned IndexWriter
+	 * 
+	 * @throws IOException
+	 */
+	public void commit() throws IOException {
+		writer.getIndexWriter().commit();
+	}
+
+	/**
+	 * Acquire the current managed searcher, which must be released by releaseSearcher()
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	public IndexSearcher acquireSearcher() throws IOException {
+		return manager.acquire();
+	}
+
+	/**
+	 * Release a searcher acquired by acquireSearcher()
+	 * 
+	 * @param searcher
+	 * @throws IOException
+	 */
+	public void releaseSearcher(IndexSearcher searcher) throws IOException {
+		manager.release(searcher);
+	}
+
+	/**
+	 * Search using the current managed searcher
+	 * 
+	 * @param query
+	 * @param k
+	 * @return
+	 * @throws IOException
+	 */
+	public List<SearchedEntry> search(Query query, int k) throws IOException {
+		IndexSearcher searcher = acquireSearcher();
+		try {
+			return search(searcher, query, k);
+		} finally {
+			releaseSearcher(searcher);
+		}
+	}
+
+	/**
+	 * Enable the query result cache with LRU eviction<br>
+	 * - results are keyed by normalized query, k, loaded fields and searcher generation (reader version), and all are invalidated when the managed searcher is refreshed
+	 * 
+	 * @param max_entries
+	 */
+	public void enableQueryCache(long max_entries) {
+		cache = CacheBuilder.newBuilder().maximumSize(max_entries).recordStats().build();
+	}
+
+	/**
+	 * Disable the query result cache
+	 */
+	public void disableQueryCache() {
+		cache = null;
+	}
+
+	/**
+	 * Invalidate all results in the query result cache
+	 */
+	public void invalidateQueryCache() {
+		if (cache != null)
+			cache.invalidateAll();
+	}
+
+	/**
+	 * Get hit/miss statistics of the query result cache
+	 * 
+	 * @return
+	 */
+	public CacheStats getQueryCacheStats() {
+		return cache != null ? cache.stats() : new CacheStats(0, 0, 0, 0, 0, 0);
+	}
+
+	private static String toCacheKey(IndexSearcher searcher, String query, int k, Set<String> fields) {
+		IndexReader reader = searcher.getIndexReader();
+		long generation = reader instanceof DirectoryReader ? ((DirectoryReader) reader).getVersion() : System.identityHashCode(reader);
+		return String.format("%d|%d|%s|%s", generation, k, fields == null ? null : new TreeSet<String>(fields), query);
+	}
 }
@@ -3,23 +3,48 @@
  */
 package kr.jihee.irnlp_toolkit.ml;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
-import java.util.TreeMap;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import kr.jihee.java_toolkit.util.JString.JEntry;
 import cc.mallet.fst.CRF;
 import cc.mallet.fst.CRFTrainerByLabelLikelihood;
+import cc.mallet.fst.CRFTrainerByThreadedLabelLikelihood;
 import cc.mallet.fst.MaxLatticeDefault;
 import cc.mallet.fst.SimpleTagger.SimpleTaggerSentence2FeatureVectorSequence;
 import cc.mallet.fst.Transducer;
+import cc.mallet.fst.TransducerTrainer;
+import cc.mallet.optimize.Optimizable;
 import cc.mallet.pipe.CharSequence2TokenSequence;
 import cc.mallet.pipe.Input2CharSequence;
 import cc.mallet.pipe.Pipe;
@@ -34,7 +59,10 @@ import cc.mallet.pipe.iterator.LineGroupIterator;
 import cc.mallet.pipe.iterator.StringArrayIterator;
 import cc.mallet.topics.ParallelTopicModel;
 import cc.mallet.topics.TopicAssignment;
+import cc.mallet.topics.TopicInferencer;
+import cc.mallet.types.Alphabet;
 import cc.mallet.types.FeatureSequence;
+import cc.mallet.types.FeatureVector;
 import cc.mallet.types.FeatureVectorSequence;
 import cc.mallet.types.IDSorter;
 import cc.mallet.types.Instance;
@@ -49,6 +77,37 @@ import cc.mallet.types.Sequence;
  */
 public class MalletWrapper {
 
+	public static AlphabetType DEFAULT_ALPHABET_TYPE = AlphabetType.DEFAULT;
+	public static int DEFAULT_NUM_BUCKETS = 1 << 20;
+
+	/**
+	 * Type of feature Alphabet used by the pipes of wrappers
+	 * 
+	 * @author Jihee
+	 */
+	public static enum AlphabetType {
+		/** Mallet's Alphabet (a String object and a hash entry for each feature) */
+		DEFAULT,
+		/** CompactAlphabet (features in a shared char array and an open-addressing int table) */
+		COMPACT,
+		/** HashingAlphabet (features hashed into DEFAULT_NUM_BUCKETS indices, without storing them; CRF only, rejected by LDA) */
+		HASHING
+	}
+
+	/**
+	 * Create an empty feature Alphabet of DEFAULT_ALPHABET_TYPE
+	 * 
+	 * @return
+	 */
+	public static Alphabet createAlphabet() {
+		if (DEFAULT_ALPHABET_TYPE == AlphabetType.COMPACT)
+			return new CompactAlphabet();
+		else if (DEFAULT_ALPHABET_TYPE == AlphabetType.HASHING)
+			return new HashingAlphabet(DEFAULT_NUM_BUCKETS);
+		else
+			return new Alphabet();
+	}
+
 	/**
 	 * Wrapper of CRF in Mallet
 	 * 
@@ -59,10 +118,15 @@ public class MalletWrapper {
 		public static double DEFAULT_PRIOR_VARIANCE = 10.0;
 		public static String DEFAULT_LABEL = "O";
 		public static boolean DEFAULT_TARGET_PROCESSING = true;
+		public static int DEFAULT_NUM_THREADS = 1;
+		public static int DEFAULT_LATTICE_CACHE_SIZE = 100000;
+		public static int DEFAULT_BUFFER_SIZE = 1 << 16;
+		public static boolean DEFAULT_VERBOSE = false; // prints the progress of each iteration to stderr
 
 		public InstanceList train_data;
 		public InstanceList test_data;
 		public CRF model;
+		public List<CRFProgress> progress = new ArrayList<CRFProgress>();
 
 		/**
 		 * 
@@ -98,6 +162,38 @@ public class MalletWrapper {
 			this.test_data = getInstanceList(data);
 		}
 
+		/**
+		 * Set a shard of training data read by SentenceIterator (gzip-compressed if the file name ends with .gz)
+		 * 
+		 * @param data_file
+		 * @param shard
+		 * @param num_shards
+		 * @throws IOException
+		 */
+		public void setTrainData(String data_file, int shard, int num_shards) throws IOException {
+			this.train_data = new InstanceList(getPipe());
+			SentenceIterator sentences = new SentenceIterator(data_file, shard, num_shards);
+			try {
+				this.train_data.addThruPipe(sentences);
+			} finally {
+				sentences.close();
+			}
+		}
+
+		/**
+		 * Get a stream of piped instances read by SentenceIterator, without keeping them in an InstanceList<br>
+		 * - the file is closed only when the stream is read to the end
+		 * 
+		 * @param data_file
+		 * @param shard
+		 * @param num_shards
+		 * @return
+		 * @throws IOException
+		 */
+		public Iterator<Instance> getInstanceIterator(String data_file, int shard, int num_shards) throws IOException {
+			return getPipe().newIteratorFrom(new SentenceIterator(data_file, shard, num_shards));
+		}
+
 		/**
 		 * 
 		 * @param data_file
@@ -126,7 +222,11 @@ public class MalletWrapper {
 		 * @return
 		 */
 		private Pipe getPipe() {
-			Pipe p = (this.model == null) ? new SimpleTaggerSentence2FeatureVectorSequence() : this.model.getInputPipe();
+			Pipe p = this.model != null ? this.model.getInputPipe() : null;
+			if (p == null) {
+				p = new SimpleTaggerSentence2FeatureVectorSequence();
+				p.setDataAlphabet(createAlphabet());
+			}
 			p.setTargetProcessing(DEFAULT_TARGET_PROCESSING);
 			return p;
 		}
@@ -137,20 +237,70 @@ public class MalletWrapper {
 		 * @return
 		 */
 		public Boolean train(Integer num_iterations) {
+			return train(num_iterations, DEFAULT_NUM_THREADS, 0.0);
+		}
+
+		/**
+		 * Train with the likelihood computed by multiple threads, recording log-likelihood and time of each iteration (printed if DEFAULT_VERBOSE)<br>
+		 * - training stops when the optimizer converges, or when the relative change of log-likelihood is below tolerance
+		 * 
+		 * @param num_iterations
+		 *            maximum number of iterations
+		 * @param num_threads
+		 *            number of threads computing the likelihood (CRFTrainerByThreadedLabelLikelihood is used if more than 1)
+		 * @param tolerance
+		 *            relative change of log-likelihood to regard as converged (0 for the convergence of the optimizer only)
+		 * @return
+		 */
+		public Boolean train(int num_iterations, int num_threads, double tolerance) {
 			this.model = new CRF(this.train_data.getPipe(), (Pipe) null);
 			for (int i = 0; i < this.model.numStates(); i++)
 				this.model.getState(i).setInitialWeight(Transducer.IMPOSSIBLE_WEIGHT);
 			String startName = this.model.addOrderNStates(this.train_data, new int[] { 1 }, null, DEFAULT_LABEL, Pattern.compile("\\s"), Pattern.compile(".*"), true);
 			this.model.getState(startName).setInitialWeight(0.0);
 
-			CRFTrainerByLabelLikelihood crft = new CRFTrainerByLabelLikelihood(this.model);
-			crft.setGaussianPriorVariance(DEFAULT_PRIOR_VARIANCE);
-			crft.setUseSparseWeights(true);
-			crft.setUseSomeUnsupportedTrick(true);
+			TransducerTrainer crft;
+			if (num_threads > 1) {
+				CRFTrainerByThreadedLabelLikelihood threaded_crft = new CRFTrainerByThreadedLabelLikelihood(this.model, num_threads);
+				threaded_crft.setGaussianPriorVariance(DEFAULT_PRIOR_VARIANCE);
+				threaded_crft.setUseSparseWeights(true);
+				threaded_crft.setUseSomeUnsupportedTrick(true);
+				crft = threaded_crft;
+			} else {
+				CRFTrainerByLabelLikelihood single_crft = new CRFTrainerByLabelLikelihood(this.model);
+				single_crft.setGaussianPriorVariance(DEFAULT_PRIOR_VARIANCE);
+				single_crft.setUseSparseWeights(true);
+				single_crft.setUseSomeUnsupportedTrick(true);
+				crft = single_crft;
+			}
 
-			for (int i = 0; i < num_iterations; i++)
-				if (crft.train(this.train_data, 1))
-					break;
+			progress.clear();
+			double prev_likelihood = Double.NaN;
+			try {
+				for (int i = 0; i < num_iterations; i++) {
+					long started = System.nanoTime();
+					boolean converged = crft.train(this.train_data, 1);
+					double elapsed_sec = (System.nanoTime() - started) / 1e9;
+
+					// the value is cached by the optimizable at the current parameters, so it is not computed again
+					Optimizable.ByGradientValue optimizable = (Optimizable.ByGradientValue) ((TransducerTrainer.ByOptimization) crft).getOptimizer().getOptimizable();
+					double likelihood = optimizable.getValue();
+					progress.add(new CRFProgress(i + 1, likelihood, elapsed_sec));
+					if (DEFAULT_VERBOSE)
+						System.err.printf("[CRF] iteration %d: log-likelihood=%.4f, %.3f sec\n", i + 1, likelihood, elapsed_sec);
+					if (converged)
+						break;
+					if (tolerance > 0 && Math.abs((likelihood - prev_likelihood) / prev_likelihood) < tolerance) {
+						if (DEFAULT_VERBOSE)
+							System.err.printf("[CRF] converged at iteration %d\n", i + 1);
+						break;
+					}
+					prev_likelihood = likelihood;
+				}
+			} finally {
+				if (crft instanceof CRFTrainerByThreadedLabelLikelihood)
+					((CRFTrainerByThreadedLabelLikelihood) crft).shutdown();
+			}
 
 			return this.model != null;
 		}
@@ -160,29 +310,181 @@ public class MalletWrapper {
 		 * @param num_best
 		 * @return
 		 */
-		@SuppressWarnings("unchecked")
 		public List<CRFResult> test(Integer num_best) {
 			List<CRFResult> groups = new ArrayList<CRFResult>();
-			for (Instance instance : this.test_data) {
-				FeatureVectorSequence input = (FeatureVectorSequence) instance.getData();
-				List<Sequence<Object>> seqs = null;
-				if (num_best > 1)
-					seqs = new MaxLatticeDefault(model, input, null, 100000).bestOutputSequences(num_best);
-				else
-					seqs = Arrays.asList((Sequence<Object>) model.transduce(input));
-				if (isError(seqs, input))
-					System.err.println("[ERROR] Error output at " + input);
-
-				List<List<String>> outputs = new ArrayList<List<String>>();
-				for (Sequence<Object> seq : seqs)
-					outputs.add(toTagStrings(seq));
-
-				groups.add(new CRFResult(input, outputs));
-			}
+			for (Instance instance : this.test_data)
+				groups.add(decode((FeatureVectorSequence) instance.getData(), num_best));
 
 			return groups;
 		}
 
+		/**
+		 * Decode test data by multiple threads sharing the trained model<br>
+		 * - test data are split into num_threads contiguous blocks, and results are in the order of test data
+		 * 
+		 * @param num_best
+		 * @param num_threads
+		 * @return
+		 * @throws InterruptedException
+		 * @throws ExecutionException
+		 */
+		public List<CRFResult> test(final int num_best, int num_threads) throws InterruptedException, ExecutionException {
+			if (num_threads <= 1)
+				return test(num_best);
+
+			final CRFResult[] groups = new CRFResult[this.test_data.size()];
+			int block_size = (groups.length + num_threads - 1) / num_threads;
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			ExecutorService pool = Executors.newFixedThreadPool(num_threads);
+			try {
+				for (int begin = 0; begin < groups.length; begin += block_size) {
+					final int from = begin;
+					final int to = Math.min(begin + block_size, groups.length);
+					futures.add(pool.submit(new Runnable() {
+						public void run() {
+							for (int i = from; i < to; i++)
+								groups[i] = decode((FeatureVectorSequence) test_data.get(i).getData(), num_best);
+						}
+					}));
+				}
+				for (Future<?> future : futures)
+					future.get();
+			} finally {
+				pool.shutdownNow();
+			}
+
+			return Arrays.asList(groups);
+		}
+
+		/**
+		 * 
+		 * @param input
+		 * @param num_best
+		 * @return
+		 */
+		@SuppressWarnings("unchecked")
+		private CRFResult decode(FeatureVectorSequence input, int num_best) {
+			List<Sequence<Object>> seqs = null;
+			if (num_best > 1)
+				seqs = new MaxLatticeDefault(model, input, null, DEFAULT_LATTICE_CACHE_SIZE).bestOutputSequences(num_best);
+			else
+				seqs = Arrays.asList((Sequence<Object>) model.transduce(input));
+			if (isError(seqs, input))
+				System.err.println("[ERROR] Error output at " + input);
+
+			List<List<String>> outputs = new ArrayList<List<String>>();
+			for (Sequence<Object> seq : seqs)
+				outputs.add(toTagStrings(seq));
+
+			return new CRFResult(input, outputs);
+		}
+
+		/**
+		 * Decode a stream of test data and pass each result to the handler, without keeping them in memory
+		 * 
+		 * @param data_file
+		 * @param shard
+		 * @param num_shards
+		 * @param num_best
+		 * @param handler
+		 * @return number of decoded instances
+		 * @throws IOException
+		 */
+		public int test(String data_file, int shard, int num_shards, int num_best, CRFResultHandler handler) throws IOException {
+			int count = 0;
+			SentenceIterator sentences = new SentenceIterator(data_file, shard, num_shards);
+			try {
+				Iterator<Instance> instances = getPipe().newIteratorFrom(sentences);
+				while (instances.hasNext()) {
+					handler.handle(decode((FeatureVectorSequence) instances.next().getData(), num_best));
+					count++;
+				}
+			} finally {
+				sentences.close();
+			}
+			return count;
+		}
+
+		/**
+		 * Save the trained model with its input pipe (gzip-compressed if the file name ends with .gz)
+		 * 
+		 * @param model_file
+		 * @throws IOException
+		 */
+		public void saveModel(String model_file) throws IOException {
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(model_file), DEFAULT_BUFFER_SIZE);
+			if (model_file.endsWith(".gz"))
+				out = new GZIPOutputStream(out, DEFAULT_BUFFER_SIZE);
+			ObjectOutputStream oos = new ObjectOutputStream(out);
+			try {
+				oos.writeObject(model); // the input pipe and its alphabets are written within the model
+			} finally {
+				oos.close();
+			}
+		}
+
+		/**
+		 * Load a model saved by saveModel(), to test or tag without training
+		 * 
+		 * @param model_file
+		 * @throws IOException
+		 * @throws ClassNotFoundException
+		 */
+		public void loadModel(String model_file) throws IOException, ClassNotFoundException {
+			InputStream in = new BufferedInputStream(new FileInputStream(model_file), DEFAULT_BUFFER_SIZE);
+			if (model_file.endsWith(".gz"))
+				in = new GZIPInputStream(in, DEFAULT_BUFFER_SIZE);
+			ObjectInputStream ois = new ObjectInputStream(in);
+			try {
+				model = (CRF) ois.readObject();
+			} finally {
+				ois.close();
+			}
+		}
+
+		/**
+		 * Tag a sentence directly with the trained model, without building an InstanceList<br>
+		 * - each token is a line of the data without label (features separated by space)<br>
+		 * - unseen features are ignored without modifying the alphabet, so this can be called by multiple threads
+		 * 
+		 * @param tokens
+		 * @return
+		 */
+		public String[] tag(String[] tokens) {
+			String[][] token_features = new String[tokens.length][];
+			for (int i = 0; i < tokens.length; i++)
+				token_features[i] = tokens[i].split(" ");
+			return tag(token_features);
+		}
+
+		/**
+		 * Tag a sentence directly with the trained model, without building an InstanceList
+		 * 
+		 * @param token_features
+		 *            features of each token
+		 * @return
+		 */
+		public String[] tag(String[][] token_features) {
+			Alphabet features = model.getInputAlphabet();
+			FeatureVector[] fvs = new FeatureVector[token_features.length];
+			for (int i = 0; i < token_features.length; i++) {
+				int[] indices = new int[token_features[i].length];
+				int size = 0;
+				for (String feature : token_features[i]) {
+					int index = features.lookupIndex(feature, false);
+					if (index >= 0)
+						indices[size++] = index;
+				}
+				fvs[i] = new FeatureVector(features, size < indices.length ? Arrays.copyOf(indices, size) : indices);
+			}
+
+			Sequence<?> output = model.transduce(new FeatureVectorSequence(fvs));
+			String[] tags = new String[output.size()];
+			for (int i = 0; i < tags.length; i++)
+				tags[i] = output.get(i).toString();
+			return tags;
+		}
+
 		/**
 		 * 
 		 * @param seqs
@@ -220,10 +522,21 @@ public class MalletWrapper {
 		public static int DEFAULT_NUM_KEYWORDS = 20;
 		public static double DEFAULT_ALPHA_SUM = 50.0;
 		public static double DEFAULT_BETA = 0.01;
+		public static int DEFAULT_NUM_THREADS = 1;
+		public static int DEFAULT_OPTIMIZE_INTERVAL = 0;
+		public static int DEFAULT_BURNIN_PERIOD = 200;
+		public static int DEFAULT_REPORT_INTERVAL = 10;
+		public static int DEFAULT_INFER_ITERATIONS = 100;
+		public static int DEFAULT_INFER_BURNIN = 10;
+		public static int DEFAULT_TOP_TOPICS = 0;
+		public static boolean DEFAULT_KEEP_DIST = false;
+		public static boolean DEFAULT_VERBOSE = false; // prints the progress of each chunk of iterations to stderr
 
 		public String keys_file;
 		public InstanceList data;
+		public Pipe pipe;
 		public ParallelTopicModel model;
+		public List<LDAProgress> progress = new ArrayList<LDAProgress>();
 
 		/**
 		 * Constructor
@@ -240,6 +553,7 @@ public class MalletWrapper {
 		 */
 		public void setInputData(String data_dir) {
 			this.data = getInstanceList(data_dir);
+			this.pipe = this.data.getPipe();
 		}
 
 		/**
@@ -248,6 +562,7 @@ public class MalletWrapper {
 		 */
 		public void setInputData(JEntry[] data) {
 			this.data = getInstanceList(data);
+			this.pipe = this.data.getPipe();
 		}
 
 		/**
@@ -278,8 +593,13 @@ public class MalletWrapper {
 		 * @param model
 		 * @param targetProcessing
 		 * @return
+		 * @throws IllegalStateException
+		 *             if DEFAULT_ALPHABET_TYPE is HASHING, since LDA allocates per-type counts for every bucket and its topic
+		 *             keywords need the original words
 		 */
 		private Pipe getPipe() {
+			if (DEFAULT_ALPHABET_TYPE == AlphabetType.HASHING)
+				throw new IllegalStateException("MalletLDAWrapper does not support HashingAlphabet; use DEFAULT or COMPACT.");
 			ArrayList<Pipe> pipes = new ArrayList<Pipe>();
 			pipes.add(new Target2Label());
 			pipes.add(new SaveDataInSource());
@@ -287,7 +607,7 @@ public class MalletWrapper {
 			pipes.add(new CharSequence2TokenSequence(Pattern.compile("\\p{Alpha}+")));
 			pipes.add(new TokenSequenceLowercase());
 			pipes.add(new TokenSequenceRemoveStopwords(false, false));
-			pipes.add(new TokenSequence2FeatureSequence());
+			pipes.add(new TokenSequence2FeatureSequence(createAlphabet()));
 			// pipes.add(new PrintInputAndTarget());
 			return new SerialPipes(pipes);
 		}
@@ -300,43 +620,244 @@ public class MalletWrapper {
 		 * @throws IOException
 		 */
 		public List<LDAResult> cluster(int num_clusters, int num_iterations) throws IOException {
-			model = new ParallelTopicModel(num_clusters, DEFAULT_ALPHA_SUM, DEFAULT_BETA);
+			model = createModel(num_clusters, DEFAULT_NUM_THREADS, DEFAULT_OPTIMIZE_INTERVAL, DEFAULT_BURNIN_PERIOD);
+			model.setNumIterations(num_iterations);
+			model.estimate();
+			return toResults(num_clusters);
+		}
+
+		/**
+		 * Cluster with multiple sampling threads, recording log-likelihood and tokens/sec every report_interval iterations (printed if DEFAULT_VERBOSE)<br>
+		 * - training stops early when the relative change of log-likelihood per token between reports is below tolerance
+		 * 
+		 * @param num_clusters
+		 * @param max_iterations
+		 * @param num_threads
+		 * @param optimize_interval
+		 *            interval of hyperparameter(alpha, beta) optimization (0 for no optimization)
+		 * @param burnin_period
+		 *            number of iterations before hyperparameter optimization
+		 * @param tolerance
+		 *            relative change of log-likelihood to regard as converged (0 for no early stopping)
+		 * @return
+		 * @throws IOException
+		 */
+		public List<LDAResult> cluster(int num_clusters, int max_iterations, int num_threads, int optimize_interval, int burnin_period, double tolerance) throws IOException {
+			model = createModel(num_clusters, num_threads, optimize_interval, burnin_period);
+			// log-likelihood is computed and reported once per chunk below, so Mallet's own topic display and LL/token logging are turned off
+			model.setTopicDisplay(0, DEFAULT_NUM_KEYWORDS);
+			model.printLogLikelihood = false;
+			// ParallelTopicModel.estimate() has no callback, so it runs for report_interval iterations at a time
+			int report_interval = DEFAULT_REPORT_INTERVAL;
+			if (optimize_interval > 0 && report_interval % optimize_interval != 0)
+				report_interval += optimize_interval - report_interval % optimize_interval;
+			progress.clear();
+			double prev_likelihood = Double.NaN;
+			for (int iteration = 0; iteration < max_iterations;) {
+				int num_iterations = Math.min(report_interval, max_iterations - iteration);
+				model.setNumIterations(num_iterations);
+				model.setBurninPeriod(Math.max(0, burnin_period - iteration));
+				long started = System.nanoTime();
+				model.estimate();
+				double elapsed_sec = (System.nanoTime() - started) / 1e9;
+				iteration += num_iterations;
+
+				double likelihood = model.modelLogLikelihood() / model.totalTokens;
+				double tokens_per_sec = (double) model.totalTokens * num_iterations / elapsed_sec;
+				progress.add(new LDAProgress(iteration, likelihood, tokens_per_sec));
+				if (DEFAULT_VERBOSE)
+					System.err.printf("[LDA] iteration %d: LL/token=%.4f, %.0f tokens/sec\n", iteration, likelihood, tokens_per_sec);
+				if (tolerance > 0 && iteration > burnin_period && Math.abs((likelihood - prev_likelihood) / prev_likelihood) < tolerance) {
+					if (DEFAULT_VERBOSE)
+						System.err.printf("[LDA] converged at iteration %d\n", iteration);
+					break;
+				}
+				prev_likelihood = likelihood;
+			}
+			return toResults(num_clusters);
+		}
+
+		private ParallelTopicModel createModel(int num_clusters, int num_threads, int optimize_interval, int burnin_period) {
+			ParallelTopicModel model = new ParallelTopicModel(num_clusters, DEFAULT_ALPHA_SUM, DEFAULT_BETA);
 			model.addInstances(this.data);
 			model.setTopicDisplay(500, DEFAULT_NUM_KEYWORDS);
-			model.setNumIterations(num_iterations);
-			model.setOptimizeInterval(0);
-			model.setBurninPeriod(200);
+			model.setOptimizeInterval(optimize_interval);
+			model.setBurninPeriod(burnin_period);
 			model.setSymmetricAlpha(false);
-			model.setNumThreads(1);
-			model.estimate();
+			model.setNumThreads(num_threads);
+			return model;
+		}
+
+		/**
+		 * Save the trained model with its pipe, to infer topics of new documents after loadModel()
+		 * 
+		 * @param model_file
+		 * @throws IOException
+		 */
+		public void saveModel(String model_file) throws IOException {
+			ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(model_file)));
+			try {
+				out.writeObject(model);
+				out.writeObject(pipe); // written in the same stream to share the alphabet with the model
+			} finally {
+				out.close();
+			}
+		}
+
+		/**
+		 * Load a model saved by saveModel()
+		 * 
+		 * @param model_file
+		 * @throws IOException
+		 * @throws ClassNotFoundException
+		 */
+		public void loadModel(String model_file) throws IOException, ClassNotFoundException {
+			ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(model_file)));
+			try {
+				model = (ParallelTopicModel) in.readObject();
+				pipe = (Pipe) in.readObject();
+			} finally {
+				in.close();
+			}
+		}
+
+		/**
+		 * Infer the topic distribution of a new document with the trained model<br>
+		 * - words not seen in training are ignored
+		 * 
+		 * @param name
+		 * @param text
+		 * @return
+		 */
+		public LDAResult infer(String name, String text) {
+			return infer(0, toInstance(name, text), model.getInferencer());
+		}
+
+		/**
+		 * Infer the topic distributions of new documents with the trained model using multiple threads<br>
+		 * - results are in the order of the documents
+		 * 
+		 * @param data
+		 * @param num_threads
+		 * @return
+		 * @throws InterruptedException
+		 * @throws ExecutionException
+		 */
+		public List<LDAResult> infer(JEntry[] data, int num_threads) throws InterruptedException, ExecutionException {
+			List<Future<LDAResult>> futures = new ArrayList<Future<LDAResult>>();
+			ExecutorService pool = Executors.newFixedThreadPool(num_threads);
+			try {
+				for (int i = 0; i < data.length; i++) {
+					final int id = i;
+					final Instance instance = toInstance(data[i].getKey(), data[i].getValue());
+					futures.add(pool.submit(new Callable<LDAResult>() {
+						public LDAResult call() {
+							// an inferencer is not thread-safe, but cheap to create because it shares the count arrays of the model
+							return infer(id, instance, model.getInferencer());
+						}
+					}));
+				}
+				List<LDAResult> results = new ArrayList<LDAResult>();
+				for (Future<LDAResult> future : futures)
+					results.add(future.get());
+				return results;
+			} finally {
+				pool.shutdownNow();
+			}
+		}
+
+		private Instance toInstance(String name, String text) {
+			pipe.getDataAlphabet().stopGrowth();
+			return pipe.instanceFrom(new Instance(text, "MyTarget", name, null));
+		}
 
+		private LDAResult infer(int id, Instance instance, TopicInferencer inferencer) {
+			double[] probs = inferencer.getSampledDistribution(instance, DEFAULT_INFER_ITERATIONS, 1, DEFAULT_INFER_BURNIN);
+			return toResult(id, instance.getName().toString(), (FeatureSequence) instance.getData(), probs);
+		}
+
+		private List<LDAResult> toResults(int num_clusters) throws IOException {
 			if (this.keys_file != null)
 				model.printTopWords(new File(this.keys_file), DEFAULT_NUM_KEYWORDS, false);
 
-			IDSorter[] outputs = new IDSorter[num_clusters];
-			List<LDAResult> groups = new ArrayList<LDAResult>();
+			int[] topic_counts = new int[num_clusters];
+			double[] probs = new double[num_clusters];
+			List<LDAResult> groups = new ArrayList<LDAResult>(model.data.size());
 			for (int id = 0; id < model.data.size(); id++) {
 				TopicAssignment result = model.data.get(id);
 				String name = result.instance.getName().toString();
 				FeatureSequence input = (FeatureSequence) result.instance.getData();
 
-				TreeMap<Integer, Integer> topic_counts = new TreeMap<Integer, Integer>();
+				Arrays.fill(topic_counts, 0);
+				int[] topics = result.topicSequence.getFeatures();
+				int length = result.topicSequence.getLength();
+				for (int i = 0; i < length; i++)
+					topic_counts[topics[i]]++;
 				for (int topic = 0; topic < num_clusters; topic++)
-					topic_counts.put(topic, 0);
-				for (int topic : result.topicSequence.getFeatures())
-					topic_counts.put(topic, topic_counts.get(topic) + 1);
+					probs[topic] = (topic_counts[topic] + model.alpha[topic]) / (length + model.alphaSum);
 
-				for (int topic = 0; topic < num_clusters; topic++) {
-					double prob = (topic_counts.get(topic) + model.alpha[topic]) / (result.topicSequence.getFeatures().length + model.alphaSum);
-					outputs[topic] = new IDSorter(topic, prob);
-				}
-				Arrays.sort(outputs);
-
-				groups.add(new LDAResult(id, name, input, outputs));
+				groups.add(toResult(id, name, input, probs));
 			}
 
 			return groups;
 		}
+
+		/**
+		 * Make a result with the top DEFAULT_TOP_TOPICS topics (0 for all topics, negative for none) of a distribution<br>
+		 * - the whole distribution is kept as float[] if DEFAULT_KEEP_DIST is true
+		 * 
+		 * @param id
+		 * @param name
+		 * @param input
+		 * @param probs
+		 * @return
+		 */
+		private static LDAResult toResult(int id, String name, FeatureSequence input, double[] probs) {
+			int num_outputs = DEFAULT_TOP_TOPICS == 0 ? probs.length : Math.max(0, Math.min(DEFAULT_TOP_TOPICS, probs.length));
+			List<IDSorter> outputs = new ArrayList<IDSorter>(num_outputs);
+			for (int topic : selectTop(probs, num_outputs))
+				outputs.add(new IDSorter(topic, probs[topic]));
+
+			float[] dist = null;
+			if (DEFAULT_KEEP_DIST) {
+				dist = new float[probs.length];
+				for (int topic = 0; topic < probs.length; topic++)
+					dist[topic] = (float) probs[topic];
+			}
+			return new LDAResult(id, name, input, outputs, dist);
+		}
+
+		/**
+		 * Select indices of the n largest weights in descending order (ties in descending order of index, as IDSorter), without sorting all of them
+		 * 
+		 * @param weights
+		 * @param n
+		 * @return
+		 */
+		public static int[] selectTop(double[] weights, int n) {
+			int[] top = new int[n];
+			if (n == 0)
+				return top;
+			int size = 0;
+			for (int i = 0; i < weights.length; i++) {
+				if (size == n && weights[i] < weights[top[n - 1]])
+					continue;
+				int j = size < n ? size++ : n - 1;
+				for (; j > 0 && weights[top[j - 1]] <= weights[i]; j--)
+					top[j] = top[j - 1];
+				top[j] = i;
+			}
+			return top;
+		}
+	}
+
+	/**
+	 * Handler of CRF results, called in the order of test data
+	 * 
+	 * @author Jihee
+	 */
+	public static interface CRFResultHandler {
+		public void handle(CRFResult result);
 	}
 
 	/**
@@ -364,6 +885,7 @@ public class MalletWrapper {
 		public String name;
 		public FeatureSequence input;
 		public List<IDSorter> outputs;
+		public float[] dist;
 
 		public LDAResult(int id, String name, FeatureSequence input, IDSorter[] outputs) {
 			this.id = id;
@@ -373,6 +895,374 @@ public class MalletWrapper {
 			for (IDSorter output : outputs)
 				this.outputs.add(new IDSorter(output.getID(), output.getWeight()));
 		}
+
+		public LDAResult(int id, String name, FeatureSequence input, List<IDSorter> outputs, float[] dist) {
+			this.id = id;
+			this.name = name;
+			this.input = input;
+			this.outputs = outputs;
+			this.dist = dist;
+		}
+	}
+
+	/**
+	 * Training progress of CRF
+	 * 
+	 * @author Jihee
+	 */
+	public static class CRFProgress {
+		public int iteration;
+		public double log_likelihood;
+		public double elapsed_sec;
+
+		public CRFProgress(int iteration, double log_likelihood, double elapsed_sec) {
+			this.iteration = iteration;
+			this.log_likelihood = log_likelihood;
+			this.elapsed_sec = elapsed_sec;
+		}
+
+		public String toString() {
+			return String.format("CRFProgress(iteration=%d, log_likelihood=%.4f, elapsed_sec=%.3f)", iteration, log_likelihood, elapsed_sec);
+		}
+	}
+
+	/**
+	 * Training progress of LDA
+	 * 
+	 * @author Jihee
+	 */
+	public static class LDAProgress {
+		public int iteration;
+		public double log_likelihood;
+		public double tokens_per_sec;
+
+		public LDAProgress(int iteration, double log_likelihood, double tokens_per_sec) {
+			this.iteration = iteration;
+			this.log_likelihood = log_likelihood;
+			this.tokens_per_sec = tokens_per_sec;
+		}
+
+		public String toString() {
+			return String.format("LDAProgress(iteration=%d, log_likelihood=%.4f, tokens_per_sec=%.0f)", iteration, log_likelihood, tokens_per_sec);
+		}
+	}
+
+	/**
+	 * Iterator of blank-line-delimited sentences in a CoNLL-style file, reading one sentence at a time<br>
+	 * - the file is gzip-compressed if its name ends with .gz<br>
+	 * - only the sentences whose index modulo num_shards is shard are returned<br>
+	 * - feature strings are not kept after piping, because the pipe maps them into its alphabet
+	 * 
+	 * @author Jihee
+	 */
+	public static class SentenceIterator implements Iterator<Instance>, Closeable {
+		public static int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+		private BufferedReader reader;
+		private int shard;
+		private int num_shards;
+		private int index = -1;
+		private String next;
+
+		public SentenceIterator(String data_file, int shard, int num_shards) throws IOException {
+			InputStream in = Files.newInputStream(Paths.get(data_file));
+			if (data_file.endsWith(".gz"))
+				in = new GZIPInputStream(in, DEFAULT_BUFFER_SIZE);
+			this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), DEFAULT_BUFFER_SIZE);
+			this.shard = shard;
+			this.num_shards = num_shards;
+			this.next = readNext();
+		}
+
+		private String readNext() throws IOException {
+			StringBuilder sentence = new StringBuilder();
+			while (reader != null) {
+				String line = reader.readLine();
+				if (line == null || line.trim().isEmpty()) {
+					if (line == null) {
+						reader.close();
+						reader = null;
+					}
+					if (sentence.length() > 0 && ++index % num_shards == shard)
+						return sentence.toString();
+					sentence.setLength(0);
+				} else {
+					if (sentence.length() > 0)
+						sentence.append('\n');
+					sentence.append(line);
+				}
+			}
+			return null;
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		public Instance next() {
+			if (next == null)
+				throw new NoSuchElementException();
+			Instance instance = new Instance(next, null, "sentence" + index, null);
+			try {
+				next = readNext();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			return instance;
+		}
+
+		/**
+		 * Close the file before reaching the end of it (closed automatically at the end)
+		 * 
+		 * @throws IOException
+		 */
+		public void close() throws IOException {
+			next = null;
+			if (reader != null) {
+				reader.close();
+				reader = null;
+			}
+		}
+
+		public void remove() {
+			throw new IllegalStateException("This Iterator<Instance> does not support remove().");
+		}
+	}
+
+	/**
+	 * Feature Alphabet backed by primitive arrays: String features are kept in a shared char array and found by an open-addressing int table<br>
+	 * - after stopGrowth(), lookups only read the arrays, so the frozen alphabet can be shared by multiple threads
+	 * 
+	 * @author Jihee
+	 */
+	public static class CompactAlphabet extends Alphabet {
+		private static final long serialVersionUID = 1L;
+
+		private char[] chars = new char[1 << 10];
+		private int num_chars = 0;
+		private int[] offsets = new int[1 << 6];
+		private int size = 0;
+		private int[] table = new int[1 << 7]; // index + 1 of each slot (0 for an empty slot)
+
+		public CompactAlphabet() {
+			super(1);
+		}
+
+		public int lookupIndex(Object entry, boolean addIfNotPresent) {
+			if (!(entry instanceof String))
+				throw new IllegalArgumentException("CompactAlphabet can only contain String entries: " + entry);
+			String key = (String) entry;
+			int mask = table.length - 1;
+			int slot = spread(key.hashCode()) & mask;
+			for (; table[slot] != 0; slot = (slot + 1) & mask)
+				if (matches(table[slot] - 1, key))
+					return table[slot] - 1;
+			if (!addIfNotPresent || growthStopped())
+				return -1;
+			return add(key, slot);
+		}
+
+		private boolean matches(int index, String key) {
+			int begin = offsets[index];
+			int length = (index + 1 < size ? offsets[index + 1] : num_chars) - begin;
+			if (length != key.length())
+				return false;
+			for (int i = 0; i < length; i++)
+				if (chars[begin + i] != key.charAt(i))
+					return false;
+			return true;
+		}
+
+		private int add(String key, int slot) {
+			if (num_chars + key.length() > chars.length)
+				chars = Arrays.copyOf(chars, Math.max(chars.length * 2, num_chars + key.length()));
+			if (size == offsets.length)
+				offsets = Arrays.copyOf(offsets, size * 2);
+			key.getChars(0, key.length(), chars, num_chars);
+			offsets[size] = num_chars;
+			num_chars += key.length();
+			table[slot] = ++size;
+			if (size * 2 > table.length)
+				rehash(table.length * 2);
+			return size - 1;
+		}
+
+		private void rehash(int capacity) {
+			int[] new_table = new int[capacity];
+			int mask = capacity - 1;
+			for (int index = 0; index < size; index++) {
+				int begin = offsets[index];
+				int end = index + 1 < size ? offsets[index + 1] : num_chars;
+				int hash = 0;
+				for (int i = begin; i < end; i++)
+					hash = 31 * hash + chars[i]; // same as String.hashCode()
+				int slot = spread(hash) & mask;
+				while (new_table[slot] != 0)
+					slot = (slot + 1) & mask;
+				new_table[slot] = index + 1;
+			}
+			table = new_table;
+		}
+
+		private static int spread(int hash) {
+			return hash ^ (hash >>> 16);
+		}
+
+		public Object lookupObject(int index) {
+			if (index < 0 || index >= size)
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+			int begin = offsets[index];
+			return new String(chars, begin, (index + 1 < size ? offsets[index + 1] : num_chars) - begin);
+		}
+
+		public Object[] lookupObjects(int[] indices) {
+			return lookupObjects(indices, new Object[indices.length]);
+		}
+
+		public Object[] lookupObjects(int[] indices, Object[] buf) {
+			for (int i = 0; i < indices.length; i++)
+				buf[i] = lookupObject(indices[i]);
+			return buf;
+		}
+
+		public Object[] toArray() {
+			return toArray(new Object[size]);
+		}
+
+		public Object[] toArray(Object[] in) {
+			Object[] out = in.length >= size ? in : Arrays.copyOf(in, size);
+			for (int i = 0; i < size; i++)
+				out[i] = lookupObject(i);
+			return out;
+		}
+
+		@SuppressWarnings("rawtypes")
+		public Iterator iterator() {
+			return Arrays.asList(toArray()).iterator();
+		}
+
+		public boolean contains(Object entry) {
+			return entry instanceof String && lookupIndex(entry, false) >= 0;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < size; i++)
+				sb.append(lookupObject(i)).append('\n');
+			return sb.toString();
+		}
+
+		public void dump(PrintWriter out) {
+			for (int i = 0; i < size; i++)
+				out.println(i + " => " + lookupObject(i));
+		}
+
+		public Object clone() {
+			CompactAlphabet ret = new CompactAlphabet();
+			ret.chars = chars.clone();
+			ret.num_chars = num_chars;
+			ret.offsets = offsets.clone();
+			ret.size = size;
+			ret.table = table.clone();
+			if (growthStopped())
+				ret.stopGrowth();
+			return ret;
+		}
+
+		/**
+		 * Approximate heap size of the arrays in bytes
+		 * 
+		 * @return
+		 */
+		public long getHeapSize() {
+			return 2L * chars.length + 4L * offsets.length + 4L * table.length;
+		}
+
+		private void writeObject(ObjectOutputStream out) throws IOException {
+			chars = Arrays.copyOf(chars, Math.max(num_chars, 1));
+			offsets = Arrays.copyOf(offsets, Math.max(size, 1));
+			out.defaultWriteObject();
+		}
+	}
+
+	/**
+	 * Feature Alphabet by the hashing trick: each feature is mapped into one of a fixed number of indices, without storing it<br>
+	 * - memory is constant regardless of the number of features, while colliding features share an index<br>
+	 * - unseen features are also mapped even after stopGrowth()
+	 * 
+	 * @author Jihee
+	 */
+	public static class HashingAlphabet extends Alphabet {
+		private static final long serialVersionUID = 1L;
+
+		private int num_buckets;
+
+		public HashingAlphabet(int num_buckets) {
+			super(1);
+			this.num_buckets = num_buckets;
+		}
+
+		public int lookupIndex(Object entry, boolean addIfNotPresent) {
+			int hash = entry.hashCode();
+			return ((hash ^ (hash >>> 16)) & 0x7fffffff) % num_buckets;
+		}
+
+		public Object lookupObject(int index) {
+			return "#" + index;
+		}
+
+		public Object[] lookupObjects(int[] indices) {
+			return lookupObjects(indices, new Object[indices.length]);
+		}
+
+		public Object[] lookupObjects(int[] indices, Object[] buf) {
+			for (int i = 0; i < indices.length; i++)
+				buf[i] = lookupObject(indices[i]);
+			return buf;
+		}
+
+		public Object[] toArray() {
+			return toArray(new Object[num_buckets]);
+		}
+
+		public Object[] toArray(Object[] in) {
+			Object[] out = in.length >= num_buckets ? in : Arrays.copyOf(in, num_buckets);
+			for (int i = 0; i < num_buckets; i++)
+				out[i] = lookupObject(i);
+			return out;
+		}
+
+		@SuppressWarnings("rawtypes")
+		public Iterator iterator() {
+			return Arrays.asList(toArray()).iterator();
+		}
+
+		public boolean contains(Object entry) {
+			return true;
+		}
+
+		public int size() {
+			return num_buckets;
+		}
+
+		public String toString() {
+			return "HashingAlphabet(" + num_buckets + ")";
+		}
+
+		public void dump(PrintWriter out) {
+			out.println(toString());
+		}
+
+		public Object clone() {
+			HashingAlphabet ret = new HashingAlphabet(num_buckets);
+			if (growthStopped())
+				ret.stopGrowth();
+			return ret;
+		}
 	}
 
 	/**
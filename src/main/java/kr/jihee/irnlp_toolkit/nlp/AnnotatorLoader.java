@@ -0,0 +1,258 @@
+/**
+ * Natural Language Processing package
+ */
+package kr.jihee.irnlp_toolkit.nlp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Loader of the annotators requested by loadAll() of a wrapper<br>
+ * - each annotator is loaded at once (SEQUENTIAL), in a background thread (PARALLEL), or at its first use (LAZY)<br>
+ * - the readiness of each annotator can be checked or awaited, and a component used before it is ready waits for it<br>
+ * - an annotator failed to load is loaded again at its next use
+ * 
+ * @author Jihee
+ */
+public class AnnotatorLoader {
+
+	/**
+	 * Load mode of annotators
+	 * 
+	 * @author Jihee
+	 */
+	public enum LoadMode {
+		SEQUENTIAL, PARALLEL, LAZY
+	}
+
+	/**
+	 * Loading task of an annotator
+	 * 
+	 * @author Jihee
+	 */
+	public interface LoadTask {
+		public void load() throws Exception;
+	}
+
+	private final String name;
+	private final ConcurrentMap<String, LoadTask> loads = new ConcurrentHashMap<String, LoadTask>();
+	private final ConcurrentMap<String, FutureTask<Void>> tasks = new ConcurrentHashMap<String, FutureTask<Void>>();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param name
+	 *            prefix of the names of loading threads
+	 */
+	public AnnotatorLoader(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Split an annotator spec (e.g. "tokenize, ssplit, pos") into annotator names
+	 * 
+	 * @param annotator_spec
+	 * @return
+	 */
+	public static List<String> toAnnotators(String annotator_spec) {
+		return Arrays.asList(annotator_spec.toLowerCase().replaceAll("\\s", "").split(","));
+	}
+
+	/**
+	 * Register an annotator and load it following the load mode
+	 * 
+	 * @param annotator
+	 * @param mode
+	 * @param task
+	 * @throws IOException
+	 *             if loaded in SEQUENTIAL mode and failed
+	 */
+	public void load(String annotator, LoadMode mode, LoadTask task) throws IOException {
+		FutureTask<Void> future = createTask(task);
+		loads.put(annotator, task);
+		tasks.put(annotator, future);
+		if (mode == LoadMode.SEQUENTIAL) {
+			future.run();
+			get(annotator, future);
+		} else if (mode == LoadMode.PARALLEL)
+			start(name + "-" + annotator, future);
+	}
+
+	private static FutureTask<Void> createTask(final LoadTask task) {
+		return new FutureTask<Void>(new Callable<Void>() {
+			public Void call() throws Exception {
+				task.load();
+				return null;
+			}
+		});
+	}
+
+	private static void start(String thread_name, Runnable runnable) {
+		Thread thread = new Thread(runnable, thread_name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Check whether an annotator is registered by load()
+	 * 
+	 * @param annotator
+	 * @return
+	 */
+	public boolean contains(String annotator) {
+		return tasks.containsKey(annotator);
+	}
+
+	/**
+	 * Wait until an annotator is loaded (a LAZY one is loaded by the calling thread)<br>
+	 * - does nothing for an annotator not registered by load()
+	 * 
+	 * @param annotator
+	 * @throws IllegalStateException
+	 *             if failed to load
+	 */
+	public void ensure(String annotator) {
+		FutureTask<Void> future = tasks.get(annotator);
+		if (future == null)
+			return;
+		future.run(); // does nothing if it has already started
+		try {
+			get(annotator, future);
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to load " + annotator, e);
+		}
+	}
+
+	/**
+	 * Check whether all the annotators are loaded successfully (without loading LAZY ones)
+	 * 
+	 * @param annotators
+	 * @return
+	 */
+	public boolean isReady(Collection<String> annotators) {
+		for (String annotator : annotators) {
+			FutureTask<Void> future = tasks.get(annotator);
+			if (future == null || !future.isDone())
+				return false;
+			try {
+				future.get();
+			} catch (Exception e) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Wait until all the annotators are loaded (LAZY ones are loaded by the calling thread)
+	 * 
+	 * @param annotators
+	 * @throws IOException
+	 *             if failed to load
+	 */
+	public void awaitReady(Collection<String> annotators) throws IOException {
+		for (String annotator : annotators) {
+			FutureTask<Void> future = getTask(annotator);
+			future.run();
+			get(annotator, future);
+		}
+	}
+
+	/**
+	 * Wait until all the annotators are loaded or the timeout elapses (unstarted LAZY ones are loaded one by one in a
+	 * single background thread)
+	 * 
+	 * @param annotators
+	 * @param timeout
+	 * @param unit
+	 * @return true if all loaded, false if timed out
+	 * @throws IOException
+	 *             if failed to load
+	 */
+	public boolean awaitReady(Collection<String> annotators, long timeout, TimeUnit unit) throws IOException {
+		Map<String, FutureTask<Void>> futures = new LinkedHashMap<String, FutureTask<Void>>();
+		final List<FutureTask<Void>> pending = new ArrayList<FutureTask<Void>>();
+		for (String annotator : annotators) {
+			FutureTask<Void> future = getTask(annotator);
+			futures.put(annotator, future);
+			if (!future.isDone())
+				pending.add(future);
+		}
+		if (!pending.isEmpty())
+			start(name + "-" + futures.keySet(), new Runnable() {
+				public void run() {
+					for (FutureTask<Void> future : pending)
+						future.run(); // does nothing if it has already started
+				}
+			});
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (Map.Entry<String, FutureTask<Void>> entry : futures.entrySet()) {
+			try {
+				entry.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			} catch (TimeoutException e) {
+				return false;
+			} catch (ExecutionException e) {
+				reset(entry.getKey(), entry.getValue());
+				throw toIOException(e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while loading " + entry.getKey());
+			}
+		}
+		return true;
+	}
+
+	private FutureTask<Void> getTask(String annotator) {
+		FutureTask<Void> future = tasks.get(annotator);
+		if (future == null)
+			throw new IllegalArgumentException("Not requested annotator: " + annotator);
+		return future;
+	}
+
+	private void get(String annotator, FutureTask<Void> future) throws IOException {
+		try {
+			future.get();
+		} catch (ExecutionException e) {
+			reset(annotator, future);
+			throw toIOException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while loading " + annotator);
+		}
+	}
+
+	/**
+	 * Replace a failed task with a new one, which is loaded at the next use of the annotator
+	 * 
+	 * @param annotator
+	 * @param failed
+	 */
+	private void reset(String annotator, FutureTask<Void> failed) {
+		LoadTask task = loads.get(annotator);
+		if (task != null)
+			tasks.replace(annotator, failed, createTask(task));
+	}
+
+	private static IOException toIOException(Throwable cause) {
+		if (cause instanceof IOException)
+			return (IOException) cause;
+		if (cause instanceof RuntimeException)
+			throw (RuntimeException) cause;
+		if (cause instanceof Error)
+			throw (Error) cause;
+		return new IOException(cause);
+	}
+}
@@ -8,17 +8,27 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipFile;
 
 import kr.jihee.irnlp_toolkit.Env;
+import kr.jihee.irnlp_toolkit.nlp.AnnotatorLoader.LoadMode;
+import kr.jihee.irnlp_toolkit.nlp.AnnotatorLoader.LoadTask;
+import kr.jihee.irnlp_toolkit.nlp.ModelRegistry.ModelLoader;
+import kr.jihee.irnlp_toolkit.nlp.ModelRegistry.ModelRefs;
 
 import org.apache.log4j.PropertyConfigurator;
 
+import com.clearnlp.component.AbstractComponent;
 import com.clearnlp.component.dep.AbstractDEPParser;
 import com.clearnlp.component.pos.AbstractPOSTagger;
 import com.clearnlp.component.pred.AbstractPredicateIdentifier;
@@ -47,7 +57,8 @@ import edu.stanford.nlp.trees.TypedDependency;
 
 /**
  * Wrapper of Stanford CoreNLP 3.3.1<br>
- * = URL : http://nlp.stanford.edu/software/corenlp.shtml
+ * = URL : http://nlp.stanford.edu/software/corenlp.shtml<br>
+ * - models are shared through ModelRegistry, which keeps them loaded even after the wrapper is dropped, so call release() and then ModelRegistry.evictUnused() to free them
  * 
  * @author Jihee
  */
@@ -62,6 +73,9 @@ public class ClearNlpWrapper {
 	public AbstractRolesetClassifier classifier;
 	public AbstractSRLabeler labeler;
 
+	private final ModelRefs models = new ModelRefs();
+	private final AnnotatorLoader loader = new AnnotatorLoader("ClearNlpWrapper");
+
 	/**
 	 * SRL label data
 	 * 
@@ -101,45 +115,56 @@ public class ClearNlpWrapper {
 	}
 
 	public void loadPosTagger() throws IOException {
-		String model_path = prop.getProperty("pos.model");
-		if (!model_path.toLowerCase().endsWith(".zip"))
-			tagger = (AbstractPOSTagger) NLPGetter.getComponent(model_path, AbstractReader.LANG_EN, NLPMode.MODE_POS);
-		else
-			tagger = (AbstractPOSTagger) NLPGetter.getComponent(new ZipFile(model_path), AbstractReader.LANG_EN, NLPMode.MODE_POS);
+		tagger = (AbstractPOSTagger) loadComponent(prop.getProperty("pos.model"), NLPMode.MODE_POS);
 	}
 
 	public void loadDepParser() throws IOException {
-		String model_path = prop.getProperty("dep.model");
-		if (!model_path.toLowerCase().endsWith(".zip"))
-			parser = (AbstractDEPParser) NLPGetter.getComponent(model_path, AbstractReader.LANG_EN, NLPMode.MODE_DEP);
-		else
-			parser = (AbstractDEPParser) NLPGetter.getComponent(new ZipFile(model_path), AbstractReader.LANG_EN, NLPMode.MODE_DEP);
+		parser = (AbstractDEPParser) loadComponent(prop.getProperty("dep.model"), NLPMode.MODE_DEP);
 	}
 
 	private void loadPredIdentifier() throws IOException {
-		String model_path = prop.getProperty("pred.model");
-		if (!model_path.toLowerCase().endsWith(".zip"))
-			identifier = (AbstractPredicateIdentifier) NLPGetter.getComponent(model_path, AbstractReader.LANG_EN, NLPMode.MODE_PRED);
-		else
-			identifier = (AbstractPredicateIdentifier) NLPGetter.getComponent(new ZipFile(model_path), AbstractReader.LANG_EN, NLPMode.MODE_PRED);
+		identifier = (AbstractPredicateIdentifier) loadComponent(prop.getProperty("pred.model"), NLPMode.MODE_PRED);
 	}
 
 	private void loadRoleClassifier() throws IOException {
-		String model_path = prop.getProperty("role.model");
-		if (!model_path.toLowerCase().endsWith(".zip"))
-			classifier = (AbstractRolesetClassifier) NLPGetter.getComponent(model_path, AbstractReader.LANG_EN, NLPMode.MODE_ROLE);
-		else
-			classifier = (AbstractRolesetClassifier) NLPGetter.getComponent(new ZipFile(model_path), AbstractReader.LANG_EN, NLPMode.MODE_ROLE);
+		classifier = (AbstractRolesetClassifier) loadComponent(prop.getProperty("role.model"), NLPMode.MODE_ROLE);
 	}
 
 	public void loadSrlLabeler() throws IOException {
 		loadPredIdentifier();
 		loadRoleClassifier();
-		String model_path = prop.getProperty("srl.model");
-		if (!model_path.toLowerCase().endsWith(".zip"))
-			labeler = (AbstractSRLabeler) NLPGetter.getComponent(model_path, AbstractReader.LANG_EN, NLPMode.MODE_SRL);
-		else
-			labeler = (AbstractSRLabeler) NLPGetter.getComponent(new ZipFile(model_path), AbstractReader.LANG_EN, NLPMode.MODE_SRL);
+		labeler = (AbstractSRLabeler) loadComponent(prop.getProperty("srl.model"), NLPMode.MODE_SRL);
+	}
+
+	/**
+	 * Get a component from ModelRegistry, so that each model is loaded once and shared by all ClearNlpWrapper instances
+	 * 
+	 * @param model_path
+	 * @param mode
+	 * @return
+	 * @throws IOException
+	 */
+	private AbstractComponent loadComponent(final String model_path, final String mode) throws IOException {
+		return models.acquire("ClearNLP." + mode, model_path, new ModelLoader<AbstractComponent>() {
+			public AbstractComponent load() throws IOException {
+				if (!model_path.toLowerCase().endsWith(".zip"))
+					return NLPGetter.getComponent(model_path, AbstractReader.LANG_EN, mode);
+				else
+					return NLPGetter.getComponent(new ZipFile(model_path), AbstractReader.LANG_EN, mode);
+			}
+		});
+	}
+
+	/**
+	 * Release the models acquired from ModelRegistry (they stay loaded until evicted by ModelRegistry.evictUnused())
+	 */
+	public void release() {
+		tagger = null;
+		parser = null;
+		identifier = null;
+		classifier = null;
+		labeler = null;
+		models.releaseAll();
 	}
 
 	public void loadAll() throws IOException {
@@ -147,38 +172,109 @@ public class ClearNlpWrapper {
 	}
 
 	public void loadAll(String annotator_spec) throws IOException {
-		List<String> annotators = Arrays.asList(annotator_spec.toLowerCase().replaceAll("\\s", "").split(","));
+		loadAll(annotator_spec, LoadMode.SEQUENTIAL);
+	}
+
+	/**
+	 * Load annotators following the load mode
+	 * 
+	 * @param annotator_spec
+	 * @param mode
+	 *            SEQUENTIAL loads one after another, PARALLEL loads all at once in background threads, and LAZY loads each at its first use
+	 * @throws IOException
+	 */
+	public void loadAll(String annotator_spec, LoadMode mode) throws IOException {
+		List<String> annotators = AnnotatorLoader.toAnnotators(annotator_spec);
 		if (annotators.contains("tokenize"))
-			loadTokenizer();
+			loader.load("tokenize", mode, new LoadTask() {
+				public void load() throws IOException {
+					loadTokenizer();
+				}
+			});
 		if (annotators.contains("ssplit"))
-			loadSentDetector();
+			loader.load("ssplit", mode, new LoadTask() {
+				public void load() throws IOException {
+					loader.ensure("tokenize"); // the sentence detector is built on the tokenizer
+					loadSentDetector();
+				}
+			});
 		if (annotators.contains("pos"))
-			loadPosTagger();
+			loader.load("pos", mode, new LoadTask() {
+				public void load() throws IOException {
+					loadPosTagger();
+				}
+			});
 		if (annotators.contains("parse"))
-			loadDepParser();
+			loader.load("parse", mode, new LoadTask() {
+				public void load() throws IOException {
+					loadDepParser();
+				}
+			});
 		if (annotators.contains("srl"))
-			loadSrlLabeler();
+			loader.load("srl", mode, new LoadTask() {
+				public void load() throws IOException {
+					loadSrlLabeler();
+				}
+			});
+	}
+
+	/**
+	 * Check whether the annotators requested by loadAll() are loaded
+	 * 
+	 * @param annotator_spec
+	 * @return
+	 */
+	public boolean isReady(String annotator_spec) {
+		return loader.isReady(AnnotatorLoader.toAnnotators(annotator_spec));
+	}
+
+	/**
+	 * Wait until the annotators requested by loadAll() are loaded
+	 * 
+	 * @param annotator_spec
+	 * @throws IOException
+	 */
+	public void awaitReady(String annotator_spec) throws IOException {
+		loader.awaitReady(AnnotatorLoader.toAnnotators(annotator_spec));
+	}
+
+	/**
+	 * Wait until the annotators requested by loadAll() are loaded or the timeout elapses
+	 * 
+	 * @param annotator_spec
+	 * @param timeout
+	 * @param unit
+	 * @return true if all loaded, false if timed out
+	 * @throws IOException
+	 */
+	public boolean awaitReady(String annotator_spec, long timeout, TimeUnit unit) throws IOException {
+		return loader.awaitReady(AnnotatorLoader.toAnnotators(annotator_spec), timeout, unit);
 	}
 
 	public List<String> tokenize(String sent) {
+		loader.ensure("tokenize");
 		return tokenizer.getTokens(sent);
 	}
 
 	public List<List<String>> detect(String text) {
+		loader.ensure("ssplit");
 		return detector.getSentences(new BufferedReader(new StringReader(text)));
 	}
 
 	public DEPTree tag(DEPTree units) {
+		loader.ensure("pos");
 		tagger.process(units);
 		return units;
 	}
 
 	public DEPTree parse(DEPTree units) {
+		loader.ensure("parse");
 		parser.process(units);
 		return units;
 	}
 
 	public List<DEPTree> parse(DEPTree units, int k) {
+		loader.ensure("parse");
 		List<ObjectDoublePair<DEPTree>> parsed_pairs = parser.getParsedTrees(units, true);
 		List<DEPTree> parsed_trees = new ArrayList<DEPTree>();
 		for (int i = 0; i < Math.min(k, parsed_pairs.size()); i++)
@@ -187,12 +283,59 @@ public class ClearNlpWrapper {
 	}
 
 	public DEPTree label(DEPTree units) {
+		loader.ensure("srl");
 		identifier.process(units);
 		classifier.process(units);
 		labeler.process(units);
 		return units;
 	}
 
+	/**
+	 * Tag, parse and label a tokenized sentence using all the loaded components
+	 * 
+	 * @param words
+	 * @return
+	 */
+	public DEPTree process(List<String> words) {
+		DEPTree units = NLPGetter.toDEPTree(words);
+		if (tagger != null || loader.contains("pos"))
+			tag(units);
+		if (parser != null || loader.contains("parse"))
+			parse(units);
+		if (labeler != null || loader.contains("srl"))
+			label(units);
+		return units;
+	}
+
+	/**
+	 * Tag, parse and label tokenized sentences in parallel using all the loaded components<br>
+	 * - in decoding, a component keeps per-sentence state in a new state object for each call and only reads its models, so every model is loaded once and shared by all the threads
+	 * 
+	 * @param sentences
+	 * @param num_threads
+	 * @return processed sentences in input order
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 */
+	public List<DEPTree> process(List<List<String>> sentences, int num_threads) throws InterruptedException, ExecutionException {
+		List<Future<DEPTree>> futures = new ArrayList<Future<DEPTree>>(sentences.size());
+		ExecutorService pool = Executors.newFixedThreadPool(num_threads);
+		try {
+			for (final List<String> words : sentences)
+				futures.add(pool.submit(new Callable<DEPTree>() {
+					public DEPTree call() {
+						return process(words);
+					}
+				}));
+			List<DEPTree> results = new ArrayList<DEPTree>(sentences.size());
+			for (Future<DEPTree> future : futures)
+				results.add(future.get());
+			return results;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
 	/**
 	 * Transform a DEPNode instance into a Word instance
 	 * 
@@ -9,6 +9,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 import kr.ac.kaist.swrc.jhannanum.comm.Eojeol;
 import kr.ac.kaist.swrc.jhannanum.comm.PlainSentence;
@@ -20,6 +21,8 @@ import kr.ac.kaist.swrc.jhannanum.plugin.MajorPlugin.PosTagger.HmmPosTagger.HMMT
 import kr.ac.kaist.swrc.jhannanum.plugin.SupplementPlugin.MorphemeProcessor.UnknownMorphProcessor.UnknownProcessor;
 import kr.ac.kaist.swrc.jhannanum.plugin.SupplementPlugin.PlainTextProcessor.SentenceSegmentor.SentenceSegmentor;
 import kr.ac.kaist.swrc.jhannanum.plugin.SupplementPlugin.PosProcessor.SimplePOSResult22.SimplePOSResult22;
+import kr.jihee.irnlp_toolkit.nlp.AnnotatorLoader.LoadMode;
+import kr.jihee.irnlp_toolkit.nlp.AnnotatorLoader.LoadTask;
 import kr.jihee.java_toolkit.util.JString;
 
 /**
@@ -34,6 +37,8 @@ public class HannanumWrapper {
 	public Workflow detector;
 	public Workflow tagger;
 
+	private final AnnotatorLoader loader = new AnnotatorLoader("HannanumWrapper");
+
 	/**
 	 * Constructor
 	 * 
@@ -45,6 +50,15 @@ public class HannanumWrapper {
 		prop.loadFromXML(new FileInputStream(prop_file));
 	}
 
+	/**
+	 * Constructor with loaded properties
+	 * 
+	 * @param prop
+	 */
+	public HannanumWrapper(Properties prop) {
+		this.prop = prop;
+	}
+
 	/**
 	 * 
 	 * @throws Exception
@@ -82,11 +96,64 @@ public class HannanumWrapper {
 	 * @throws Exception
 	 */
 	public void loadAll(String annotator_spec) throws Exception {
-		List<String> annotators = Arrays.asList(annotator_spec.toLowerCase().replaceAll("\\s", "").split(","));
+		loadAll(annotator_spec, LoadMode.SEQUENTIAL);
+	}
+
+	/**
+	 * Load annotators following the load mode
+	 * 
+	 * @param annotator_spec
+	 * @param mode
+	 *            SEQUENTIAL loads one after another, PARALLEL loads all at once in background threads, and LAZY loads each at its first use
+	 * @throws Exception
+	 */
+	public void loadAll(String annotator_spec, LoadMode mode) throws Exception {
+		List<String> annotators = AnnotatorLoader.toAnnotators(annotator_spec);
 		if (annotators.contains("ssplit"))
-			loadSentDetector();
+			loader.load("ssplit", mode, new LoadTask() {
+				public void load() throws Exception {
+					loadSentDetector();
+				}
+			});
 		if (annotators.contains("pos"))
-			loadPosTagger();
+			loader.load("pos", mode, new LoadTask() {
+				public void load() throws Exception {
+					loadPosTagger();
+				}
+			});
+	}
+
+	/**
+	 * Check whether the annotators requested by loadAll() are loaded
+	 * 
+	 * @param annotator_spec
+	 * @return
+	 */
+	public boolean isReady(String annotator_spec) {
+		return loader.isReady(AnnotatorLoader.toAnnotators(annotator_spec));
+	}
+
+	/**
+	 * Wait until the annotators requested by loadAll() are loaded
+	 * 
+	 * @param annotator_spec
+	 * @throws IOException
+	 */
+	public void awaitReady(String annotator_spec) throws IOException {
+		loader.awaitReady(AnnotatorLoader.toAnnotators(annotator_spec));
+	}
+
+	/**
+	 * Wait until the annotators requested by loadAll() are loaded or the timeout elapses
+	 * 
+	 * @param annotator_spec
+	 * @param timeout
+	 * @param unit
+	 * @return true if all loaded, false if timed out
+	 * @throws IOException
+	 */
+	public boolean awaitReady(String annotator_spec, long timeout, TimeUnit unit) throws IOException {
+		return loader.awaitReady(AnnotatorLoader.toAnnotators(annotator_spec), timeout, unit);
 	}
 
 	/**
@@ -105,6 +172,7 @@ public class HannanumWrapper {
 	 * @return
 	 */
 	public List<String> detect(String text) {
+		loader.ensure("ssplit");
 		detector.analyze(text);
 		try {
 			List<String> sentences = new ArrayList<String>();
@@ -123,6 +191,7 @@ public class HannanumWrapper {
 	 * @return
 	 */
 	public List<TaggedWord> tag(String sent) {
+		loader.ensure("pos");
 		tagger.analyze(sent);
 		try {
 			List<Sentence> results = tagger.getResultOfDocument(new Sentence(0, 0, true));
@@ -0,0 +1,307 @@
+/**
+ * Natural Language Processing package
+ */
+package kr.jihee.irnlp_toolkit.nlp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide registry of loaded models shared by all wrapper instances<br>
+ * - a model is keyed by its type and path, and loaded only once even if requested by several threads at the same time<br>
+ * - acquired models are reference counted, and unused ones stay loaded until evicted explicitly<br>
+ * - NOTE: models are held by this static registry, not by the wrappers, so dropping a wrapper does not free its models; call release() of the wrapper and then evict() or evictUnused()
+ * 
+ * @author Jihee
+ */
+public class ModelRegistry {
+
+	public static boolean DEFAULT_MEASURE_SIZE = false; // forces GC around each load, so for diagnosis only
+
+	private static final ConcurrentMap<String, ModelEntry> entries = new ConcurrentHashMap<String, ModelEntry>();
+
+	/**
+	 * Loader of a model which is called once per type and path
+	 * 
+	 * @author Jihee
+	 */
+	public interface ModelLoader<T> {
+		public T load() throws IOException;
+	}
+
+	/**
+	 * Statistics of a registered model
+	 * 
+	 * @author Jihee
+	 */
+	public static class ModelStats {
+
+		public String type;
+		public String path;
+		public int refs;
+		public boolean loaded;
+		public double load_time;
+		public long size;
+
+		public ModelStats(String type, String path, int refs, boolean loaded, double load_time, long size) {
+			this.type = type;
+			this.path = path;
+			this.refs = refs;
+			this.loaded = loaded;
+			this.load_time = load_time;
+			this.size = size;
+		}
+
+		public String toString() {
+			return String.format("ModelStats(type=%s, path=%s, refs=%d, loaded=%s, load_time=%.1fs, size=%.1fMB)", type, path, refs, loaded, load_time, size / 1e6);
+		}
+	}
+
+	/**
+	 * Registered model
+	 * 
+	 * @author Jihee
+	 */
+	private static class ModelEntry {
+
+		final String type;
+		final String path;
+		final FutureTask<Object> task;
+		final AtomicInteger refs = new AtomicInteger(); // -1 once evicted, so that it cannot be acquired any more
+		volatile double load_time = -1;
+		volatile long size = -1;
+
+		ModelEntry(String type, String path, final ModelLoader<?> loader) {
+			this.type = type;
+			this.path = path;
+			this.task = new FutureTask<Object>(new Callable<Object>() {
+				public Object call() throws IOException {
+					long before = DEFAULT_MEASURE_SIZE ? getUsedHeap() : 0;
+					long start = System.nanoTime();
+					Object model = loader.load();
+					load_time = (System.nanoTime() - start) / 1e9;
+					if (DEFAULT_MEASURE_SIZE)
+						size = Math.max(0, getUsedHeap() - before);
+					return model;
+				}
+			});
+		}
+
+		/**
+		 * Increase the reference count unless evicted
+		 * 
+		 * @return false if evicted
+		 */
+		boolean retain() {
+			while (true) {
+				int n = refs.get();
+				if (n < 0)
+					return false;
+				if (refs.compareAndSet(n, n + 1))
+					return true;
+			}
+		}
+
+		/**
+		 * Decrease the reference count if referenced
+		 * 
+		 * @return remaining reference count
+		 */
+		int unretain() {
+			while (true) {
+				int n = refs.get();
+				if (n <= 0)
+					return Math.max(n, 0);
+				if (refs.compareAndSet(n, n - 1))
+					return n - 1;
+			}
+		}
+
+		ModelStats toStats() {
+			return new ModelStats(type, path, Math.max(refs.get(), 0), task.isDone(), load_time, size);
+		}
+	}
+
+	/**
+	 * Models acquired by a wrapper instance (each model is counted once however many times it is acquired)
+	 * 
+	 * @author Jihee
+	 */
+	public static class ModelRefs {
+
+		private final Set<String> keys = new HashSet<String>();
+
+		public <T> T acquire(String type, String path, ModelLoader<T> loader) throws IOException {
+			T model = ModelRegistry.acquire(type, path, loader);
+			synchronized (keys) {
+				if (!keys.add(toKey(type, path)))
+					ModelRegistry.release(type, path);
+			}
+			return model;
+		}
+
+		public void releaseAll() {
+			synchronized (keys) {
+				for (String key : keys)
+					release(key);
+				keys.clear();
+			}
+		}
+	}
+
+	private static String toKey(String type, String path) {
+		return type + "\t" + path;
+	}
+
+	/**
+	 * Get a model, loading it only if it is not registered yet, and increase its reference count
+	 * 
+	 * @param type
+	 *            model type (e.g. ClearNLP.pos), so that the same path can be loaded as different models
+	 * @param path
+	 * @param loader
+	 * @return
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T acquire(String type, String path, ModelLoader<T> loader) throws IOException {
+		String key = toKey(type, path);
+		ModelEntry entry;
+		do {
+			entry = entries.get(key);
+			if (entry == null) {
+				ModelEntry new_entry = new ModelEntry(type, path, loader);
+				entry = entries.putIfAbsent(key, new_entry);
+				if (entry == null)
+					entry = new_entry;
+			}
+		} while (!entry.retain()); // evicted in the meantime, so retry with the entry registered next
+		entry.task.run(); // does nothing if another thread has already run it
+		try {
+			return (T) entry.task.get();
+		} catch (ExecutionException e) {
+			entry.unretain();
+			entries.remove(key, entry); // a failed load is not kept, so that it can be retried
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		} catch (InterruptedException e) {
+			entry.unretain();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while loading " + key);
+		}
+	}
+
+	/**
+	 * Decrease the reference count of a model (the model stays loaded until evicted)
+	 * 
+	 * @param type
+	 * @param path
+	 * @return remaining reference count, or -1 if not registered
+	 */
+	public static int release(String type, String path) {
+		return release(toKey(type, path));
+	}
+
+	private static int release(String key) {
+		ModelEntry entry = entries.get(key);
+		return entry != null ? entry.unretain() : -1;
+	}
+
+	/**
+	 * Evict a model which is not referenced any more
+	 * 
+	 * @param type
+	 * @param path
+	 * @return true if evicted
+	 */
+	public static boolean evict(String type, String path) {
+		String key = toKey(type, path);
+		ModelEntry entry = entries.get(key);
+		// marking as evicted and checking for no reference are done at once, so that a concurrent acquire() cannot retain it
+		return entry != null && entry.task.isDone() && entry.refs.compareAndSet(0, -1) && entries.remove(key, entry);
+	}
+
+	/**
+	 * Evict all the models which are not referenced any more
+	 * 
+	 * @return number of evicted models
+	 */
+	public static int evictUnused() {
+		int num_evicted = 0;
+		for (ModelEntry entry : entries.values())
+			if (evict(entry.type, entry.path))
+				num_evicted++;
+		return num_evicted;
+	}
+
+	/**
+	 * Get the statistics of a model
+	 * 
+	 * @param type
+	 * @param path
+	 * @return statistics, or null if not registered
+	 */
+	public static ModelStats getStats(String type, String path) {
+		ModelEntry entry = entries.get(toKey(type, path));
+		return entry != null ? entry.toStats() : null;
+	}
+
+	/**
+	 * Get the statistics of all the registered models
+	 * 
+	 * @return
+	 */
+	public static List<ModelStats> getAllStats() {
+		List<ModelStats> stats = new ArrayList<ModelStats>();
+		for (ModelEntry entry : entries.values())
+			stats.add(entry.toStats());
+		Collections.sort(stats, new Comparator<ModelStats>() {
+			public int compare(ModelStats a, ModelStats b) {
+				return toKey(a.type, a.path).compareTo(toKey(b.type, b.path));
+			}
+		});
+		return stats;
+	}
+
+	/**
+	 * Get a report of load time and retained size of all the registered models<br>
+	 * - retained size is measured only if DEFAULT_MEASURE_SIZE is set (-1 otherwise), approximated by the heap growth during loading, so it is inaccurate when loads overlap
+	 * 
+	 * @return
+	 */
+	public static String getStatsReport() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-20s %6s %8s %10s %10s  %s\n", "type", "refs", "loaded", "load(s)", "size(MB)", "path"));
+		long total_size = 0;
+		for (ModelStats s : getAllStats()) {
+			sb.append(String.format("%-20s %6d %8s %10.1f %10.1f  %s\n", s.type, s.refs, s.loaded, s.load_time, s.size / 1e6, s.path));
+			total_size += Math.max(0, s.size);
+		}
+		sb.append(String.format("models=%d, size=%.1fMB", entries.size(), total_size / 1e6));
+		return sb.toString();
+	}
+
+	private static long getUsedHeap() {
+		System.gc();
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
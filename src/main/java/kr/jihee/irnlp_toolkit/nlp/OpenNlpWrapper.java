@@ -5,10 +5,22 @@ package kr.jihee.irnlp_toolkit.nlp;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import kr.jihee.irnlp_toolkit.nlp.AnnotatorLoader.LoadMode;
+import kr.jihee.irnlp_toolkit.nlp.AnnotatorLoader.LoadTask;
+import kr.jihee.irnlp_toolkit.nlp.ModelRegistry.ModelLoader;
+import kr.jihee.irnlp_toolkit.nlp.ModelRegistry.ModelRefs;
 
 import opennlp.tools.chunker.ChunkerME;
 import opennlp.tools.chunker.ChunkerModel;
@@ -29,13 +41,15 @@ import opennlp.tools.util.Span;
 
 /**
  * Wrapper of OpenNLP 1.5.3<br>
- * = URL : http://opennlp.apache.org/
+ * = URL : http://opennlp.apache.org/<br>
+ * - models are shared through ModelRegistry, which keeps them loaded even after the wrapper is dropped, so call release() and then ModelRegistry.evictUnused() to free them
  * 
  * @author Jihee
  */
 public class OpenNlpWrapper {
 
 	public Properties prop;
+	public boolean concurrent;
 	public SentenceDetectorME detector;
 	public TokenizerME tokenizer;
 	public POSTaggerME tagger;
@@ -43,55 +57,225 @@ public class OpenNlpWrapper {
 	public Parser parser;
 	public List<NameFinderME> recognizers;
 
+	public SentenceModel detectorModel;
+	public TokenizerModel tokenizerModel;
+	public POSModel taggerModel;
+	public ChunkerModel chunkerModel;
+	public ParserModel parserModel;
+	public List<TokenNameFinderModel> recognizerModels;
+
+	public static int DEFAULT_LOAD_THREADS = 4;
+
+	private final ModelRefs models = new ModelRefs();
+	private final AnnotatorLoader loader = new AnnotatorLoader("OpenNlpWrapper");
+
+	// ME instances are not thread-safe but models are, so concurrent mode builds per-thread ME instances from the shared models
+	private volatile ThreadLocal<SentenceDetectorME> localDetector;
+	private volatile ThreadLocal<TokenizerME> localTokenizer;
+	private volatile ThreadLocal<POSTaggerME> localTagger;
+	private volatile ThreadLocal<ChunkerME> localChunker;
+	private volatile ThreadLocal<Parser> localParser;
+	private volatile ThreadLocal<List<NameFinderME>> localRecognizers;
+
 	public OpenNlpWrapper(String prop_file) throws IOException {
+		this(prop_file, false);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param prop_file
+	 * @param concurrent
+	 *            if true, models are loaded once and shared, and every calling thread uses its own ME instances
+	 * @throws IOException
+	 */
+	public OpenNlpWrapper(String prop_file, boolean concurrent) throws IOException {
 		prop = new Properties();
 		prop.loadFromXML(new FileInputStream(prop_file));
+		this.concurrent = concurrent;
+		createLocals();
 	}
 
 	public void loadSentDetector() throws IOException {
-		String model_file = prop.getProperty("sent.model");
+		final String model_file = prop.getProperty("sent.model");
 		System.err.printf("Loading sentence detector from %s ... ", model_file);
-		detector = new SentenceDetectorME(new SentenceModel(new FileInputStream(model_file)));
+		detectorModel = models.acquire("OpenNLP.sent", model_file, new ModelLoader<SentenceModel>() {
+			public SentenceModel load() throws IOException {
+				return new SentenceModel(new FileInputStream(model_file));
+			}
+		});
+		if (!concurrent)
+			detector = new SentenceDetectorME(detectorModel);
 		System.err.println("done");
 	}
 
 	public void loadTokenizer() throws IOException {
-		String model_file = prop.getProperty("tok.model");
+		final String model_file = prop.getProperty("tok.model");
 		System.err.printf("Loading tokenizer from %s ... ", model_file);
-		tokenizer = new TokenizerME(new TokenizerModel(new FileInputStream(model_file)));
+		tokenizerModel = models.acquire("OpenNLP.tok", model_file, new ModelLoader<TokenizerModel>() {
+			public TokenizerModel load() throws IOException {
+				return new TokenizerModel(new FileInputStream(model_file));
+			}
+		});
+		if (!concurrent)
+			tokenizer = new TokenizerME(tokenizerModel);
 		System.err.println("done");
 	}
 
 	public void loadPosTagger() throws IOException {
-		String model_file = prop.getProperty("pos.model");
+		final String model_file = prop.getProperty("pos.model");
 		System.err.printf("Loading POS tagger from %s ... ", model_file);
-		tagger = new POSTaggerME(new POSModel(new FileInputStream(model_file)));
+		taggerModel = models.acquire("OpenNLP.pos", model_file, new ModelLoader<POSModel>() {
+			public POSModel load() throws IOException {
+				return new POSModel(new FileInputStream(model_file));
+			}
+		});
+		if (!concurrent)
+			tagger = new POSTaggerME(taggerModel);
 		System.err.println("done");
 	}
 
 	public void loadChunker() throws IOException {
-		String model_file = prop.getProperty("chunk.model");
+		final String model_file = prop.getProperty("chunk.model");
 		System.err.printf("Loading phrase chunker from %s ... ", model_file);
-		chunker = new ChunkerME(new ChunkerModel(new FileInputStream(model_file)));
+		chunkerModel = models.acquire("OpenNLP.chunk", model_file, new ModelLoader<ChunkerModel>() {
+			public ChunkerModel load() throws IOException {
+				return new ChunkerModel(new FileInputStream(model_file));
+			}
+		});
+		if (!concurrent)
+			chunker = new ChunkerME(chunkerModel);
 		System.err.println("done");
 	}
 
 	public void loadLexParser() throws IOException {
-		String model_file = prop.getProperty("parse.model");
+		final String model_file = prop.getProperty("parse.model");
 		System.err.printf("Loading parser from %s ... ", model_file);
-		parser = ParserFactory.create(new ParserModel(new FileInputStream(model_file)));
+		parserModel = models.acquire("OpenNLP.parse", model_file, new ModelLoader<ParserModel>() {
+			public ParserModel load() throws IOException {
+				return new ParserModel(new FileInputStream(model_file));
+			}
+		});
+		if (!concurrent)
+			parser = ParserFactory.create(parserModel);
 		System.err.println("done");
 	}
 
 	public void loadEntityRecognizers() throws IOException {
-		recognizers = new ArrayList<NameFinderME>();
+		loadEntityRecognizers(1);
+	}
+
+	/**
+	 * Load the named entity recognizers reading their models concurrently
+	 * 
+	 * @param num_threads
+	 * @throws IOException
+	 */
+	public void loadEntityRecognizers(int num_threads) throws IOException {
 		List<String> model_names = Arrays.asList("ner.person.model", "ner.organization.model", "ner.location.model", "ner.date.model", "ner.time.model", "ner.money.model", "ner.percentage.model");
-		for (String model_name : model_names) {
-			String model_file = prop.getProperty(model_name);
-			System.err.printf("Loading named entity recognizer from %s ... ", model_file);
-			recognizers.add(new NameFinderME(new TokenNameFinderModel(new FileInputStream(model_file))));
-			System.err.println("done");
+		List<Future<TokenNameFinderModel>> futures = new ArrayList<Future<TokenNameFinderModel>>();
+		ExecutorService pool = Executors.newFixedThreadPool(num_threads);
+		try {
+			for (String model_name : model_names) {
+				final String model_file = prop.getProperty(model_name);
+				futures.add(pool.submit(new Callable<TokenNameFinderModel>() {
+					public TokenNameFinderModel call() throws IOException {
+						TokenNameFinderModel model = models.acquire("OpenNLP.ner", model_file, new ModelLoader<TokenNameFinderModel>() {
+							public TokenNameFinderModel load() throws IOException {
+								return new TokenNameFinderModel(new FileInputStream(model_file));
+							}
+						});
+						System.err.printf("Loading named entity recognizer from %s ... done\n", model_file);
+						return model;
+					}
+				}));
+			}
+			List<TokenNameFinderModel> loaded = new ArrayList<TokenNameFinderModel>();
+			for (Future<TokenNameFinderModel> future : futures)
+				loaded.add(getModel(future));
+			recognizerModels = loaded;
+		} finally {
+			pool.shutdownNow();
 		}
+		if (!concurrent)
+			recognizers = createRecognizers(recognizerModels);
+	}
+
+	private static <T> T getModel(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while loading named entity recognizers");
+		}
+	}
+
+	private static List<NameFinderME> createRecognizers(List<TokenNameFinderModel> models) {
+		List<NameFinderME> recognizers = new ArrayList<NameFinderME>();
+		for (TokenNameFinderModel model : models)
+			recognizers.add(new NameFinderME(model));
+		return recognizers;
+	}
+
+	/**
+	 * Create new holders of per-thread ME instances<br>
+	 * - replacing the holders drops the ME instances of all threads, which ThreadLocal.remove() can do only for the calling thread
+	 */
+	private void createLocals() {
+		localDetector = new ThreadLocal<SentenceDetectorME>() {
+			protected SentenceDetectorME initialValue() {
+				return new SentenceDetectorME(detectorModel);
+			}
+		};
+		localTokenizer = new ThreadLocal<TokenizerME>() {
+			protected TokenizerME initialValue() {
+				return new TokenizerME(tokenizerModel);
+			}
+		};
+		localTagger = new ThreadLocal<POSTaggerME>() {
+			protected POSTaggerME initialValue() {
+				return new POSTaggerME(taggerModel);
+			}
+		};
+		localChunker = new ThreadLocal<ChunkerME>() {
+			protected ChunkerME initialValue() {
+				return new ChunkerME(chunkerModel);
+			}
+		};
+		localParser = new ThreadLocal<Parser>() {
+			protected Parser initialValue() {
+				return ParserFactory.create(parserModel);
+			}
+		};
+		localRecognizers = new ThreadLocal<List<NameFinderME>>() {
+			protected List<NameFinderME> initialValue() {
+				return createRecognizers(recognizerModels);
+			}
+		};
+	}
+
+	/**
+	 * Release the models acquired from ModelRegistry (they stay loaded until evicted by ModelRegistry.evictUnused()) and the per-thread ME instances
+	 */
+	public void release() {
+		detector = null;
+		tokenizer = null;
+		tagger = null;
+		chunker = null;
+		parser = null;
+		recognizers = null;
+		detectorModel = null;
+		tokenizerModel = null;
+		taggerModel = null;
+		chunkerModel = null;
+		parserModel = null;
+		recognizerModels = null;
+		createLocals();
+		models.releaseAll();
 	}
 
 	public void loadAll() throws IOException {
@@ -99,55 +283,157 @@ public class OpenNlpWrapper {
 	}
 
 	public void loadAll(String annotator_spec) throws IOException {
-		List<String> annotators = Arrays.asList(annotator_spec.toLowerCase().replaceAll("\\s", "").split(","));
+		loadAll(annotator_spec, LoadMode.SEQUENTIAL);
+	}
+
+	/**
+	 * Load annotators following the load mode
+	 * 
+	 * @param annotator_spec
+	 * @param mode
+	 *            SEQUENTIAL loads one after another, PARALLEL loads all at once in background threads, and LAZY loads each at its first use
+	 * @throws IOException
+	 */
+	public void loadAll(String annotator_spec, final LoadMode mode) throws IOException {
+		List<String> annotators = AnnotatorLoader.toAnnotators(annotator_spec);
 		if (annotators.contains("ssplit"))
-			loadSentDetector();
+			loader.load("ssplit", mode, new LoadTask() {
+				public void load() throws IOException {
+					loadSentDetector();
+				}
+			});
 		if (annotators.contains("tokenize"))
-			loadTokenizer();
+			loader.load("tokenize", mode, new LoadTask() {
+				public void load() throws IOException {
+					loadTokenizer();
+				}
+			});
 		if (annotators.contains("pos"))
-			loadPosTagger();
+			loader.load("pos", mode, new LoadTask() {
+				public void load() throws IOException {
+					loadPosTagger();
+				}
+			});
 		if (annotators.contains("chunk"))
-			loadChunker();
+			loader.load("chunk", mode, new LoadTask() {
+				public void load() throws IOException {
+					loadChunker();
+				}
+			});
 		if (annotators.contains("parse"))
-			loadLexParser();
+			loader.load("parse", mode, new LoadTask() {
+				public void load() throws IOException {
+					loadLexParser();
+				}
+			});
 		if (annotators.contains("ner"))
-			loadEntityRecognizers();
+			loader.load("ner", mode, new LoadTask() {
+				public void load() throws IOException {
+					loadEntityRecognizers(mode == LoadMode.PARALLEL ? DEFAULT_LOAD_THREADS : 1);
+				}
+			});
+	}
+
+	/**
+	 * Check whether the annotators requested by loadAll() are loaded
+	 * 
+	 * @param annotator_spec
+	 * @return
+	 */
+	public boolean isReady(String annotator_spec) {
+		return loader.isReady(AnnotatorLoader.toAnnotators(annotator_spec));
+	}
+
+	/**
+	 * Wait until the annotators requested by loadAll() are loaded
+	 * 
+	 * @param annotator_spec
+	 * @throws IOException
+	 */
+	public void awaitReady(String annotator_spec) throws IOException {
+		loader.awaitReady(AnnotatorLoader.toAnnotators(annotator_spec));
+	}
+
+	/**
+	 * Wait until the annotators requested by loadAll() are loaded or the timeout elapses
+	 * 
+	 * @param annotator_spec
+	 * @param timeout
+	 * @param unit
+	 * @return true if all loaded, false if timed out
+	 * @throws IOException
+	 */
+	public boolean awaitReady(String annotator_spec, long timeout, TimeUnit unit) throws IOException {
+		return loader.awaitReady(AnnotatorLoader.toAnnotators(annotator_spec), timeout, unit);
+	}
+
+	private SentenceDetectorME getDetector() {
+		loader.ensure("ssplit");
+		return concurrent ? localDetector.get() : detector;
+	}
+
+	private TokenizerME getTokenizer() {
+		loader.ensure("tokenize");
+		return concurrent ? localTokenizer.get() : tokenizer;
+	}
+
+	private POSTaggerME getTagger() {
+		loader.ensure("pos");
+		return concurrent ? localTagger.get() : tagger;
+	}
+
+	private ChunkerME getChunker() {
+		loader.ensure("chunk");
+		return concurrent ? localChunker.get() : chunker;
+	}
+
+	private Parser getParser() {
+		loader.ensure("parse");
+		return concurrent ? localParser.get() : parser;
+	}
+
+	private List<NameFinderME> getRecognizers() {
+		loader.ensure("ner");
+		return concurrent ? localRecognizers.get() : recognizers;
 	}
 
 	public String[] tokenize(String text) {
-		return tokenizer.tokenize(text);
+		return getTokenizer().tokenize(text);
 	}
 
 	public String[] detect(String text) {
-		return detector.sentDetect(text);
+		return getDetector().sentDetect(text);
 	}
 
 	public String[] tag(String[] toks) {
-		return tagger.tag(toks);
+		return getTagger().tag(toks);
 	}
 
 	public String[] chunk(String[] toks, String[] tags) {
-		return chunker.chunk(toks, tags);
+		return getChunker().chunk(toks, tags);
 	}
 
 	public Parse parse(String sent) {
-		return ParserTool.parseLine(sent, parser, 1)[0];
+		return ParserTool.parseLine(sent, getParser(), 1)[0];
 	}
 
 	public Parse[] parse(String sent, int k) {
-		return ParserTool.parseLine(sent, parser, k);
+		return ParserTool.parseLine(sent, getParser(), k);
 	}
 
 	public List<Span> recognize(String[] toks) {
 		ArrayList<Span> spans = new ArrayList<Span>();
-		for (NameFinderME recognizer : recognizers)
+		for (NameFinderME recognizer : getRecognizers())
 			for (Span s : recognizer.find(toks))
 				spans.add(s);
 		return spans;
 	}
 
+	/**
+	 * Clear adaptive data of the recognizers (in concurrent mode, only those of the calling thread)
+	 */
 	public void clearRecognizers() {
-		for (NameFinderME recognizer : recognizers)
+		for (NameFinderME recognizer : getRecognizers())
 			recognizer.clearAdaptiveData();
 	}
 
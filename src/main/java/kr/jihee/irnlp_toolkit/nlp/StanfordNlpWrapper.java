@@ -5,6 +5,7 @@ package kr.jihee.irnlp_toolkit.nlp;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.io.StringReader;
@@ -12,12 +13,30 @@ import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
+import kr.jihee.irnlp_toolkit.nlp.ModelRegistry.ModelLoader;
+import kr.jihee.irnlp_toolkit.nlp.ModelRegistry.ModelRefs;
 import kr.jihee.java_toolkit.util.JString;
 
 import com.google.common.collect.ImmutableList;
@@ -26,8 +45,10 @@ import edu.stanford.nlp.dcoref.CorefChain;
 import edu.stanford.nlp.dcoref.CorefChain.CorefMention;
 import edu.stanford.nlp.dcoref.CorefCoreAnnotations.CorefChainAnnotation;
 import edu.stanford.nlp.dcoref.CorefCoreAnnotations.CorefClusterIdAnnotation;
+import edu.stanford.nlp.io.RuntimeIOException;
 import edu.stanford.nlp.ling.CoreAnnotations.BeginIndexAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.EndIndexAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.HasWord;
@@ -42,6 +63,8 @@ import edu.stanford.nlp.parser.lexparser.LexicalizedParser;
 import edu.stanford.nlp.parser.lexparser.Options;
 import edu.stanford.nlp.pipeline.Annotation;
 import edu.stanford.nlp.pipeline.AnnotationPipeline;
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.pipeline.Annotator.Requirement;
 import edu.stanford.nlp.pipeline.StanfordCoreNLP;
 import edu.stanford.nlp.process.PTBTokenizer;
 import edu.stanford.nlp.process.TokenizerFactory;
@@ -62,11 +85,13 @@ import edu.stanford.nlp.trees.TypedDependency;
 import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.Filter;
 import edu.stanford.nlp.util.Filters;
+import edu.stanford.nlp.util.RuntimeInterruptedException;
 import edu.stanford.nlp.util.ScoredObject;
 
 /**
  * Wrapper of Stanford CoreNLP 3.3.1<br>
- * = URL : http://nlp.stanford.edu/software/corenlp.shtml
+ * = URL : http://nlp.stanford.edu/software/corenlp.shtml<br>
+ * - models are shared through ModelRegistry, which keeps them loaded even after the wrapper is dropped, so call release() and then ModelRegistry.evictUnused() to free them
  * 
  * @author Jihee
  */
@@ -79,6 +104,20 @@ public class StanfordNlpWrapper {
 	public KBestViterbiParser parserK;
 	public StanfordCoreNLP annotator;
 	public AnnotationPipeline normalizer;
+	public FailurePolicy failurePolicy = FailurePolicy.RETRY_TRANSIENT;
+
+	private AnnotationPipeline pipeline;
+	private AnnotationPipeline degradedPipeline;
+	private final Map<String, AnnotatorStats> stats = new LinkedHashMap<String, AnnotatorStats>();
+	private final AtomicLong retryCount = new AtomicLong();
+	private final AtomicLong degradeCount = new AtomicLong();
+	private ScheduledExecutorService reporter;
+	private final ModelRefs models = new ModelRefs();
+
+	public static int DEFAULT_PENDING_PER_THREAD = 4;
+	public static List<String> DEGRADABLE_ANNOTATORS = Arrays.asList("parse", "dcoref", "sentiment", "relation");
+	public static final String DOCUMENT_STATS = "document";
+	public static final String SUTIME_STATS = "sutime";
 
 	private static final List<GrammaticalRelation> COMMON_RELATIONS = Arrays.asList(GrammaticalRelation.ROOT, GrammaticalRelation.DEPENDENT, GrammaticalRelation.GOVERNOR, GrammaticalRelation.KILL);
 
@@ -161,6 +200,244 @@ public class StanfordNlpWrapper {
 		}
 	}
 
+	/**
+	 * Result of batch annotation
+	 * 
+	 * @author Jihee
+	 */
+	public static class AnnotationResult {
+
+		public int index; // 0-based input index
+		public String text;
+		public Annotation annotation;
+		public Throwable error;
+
+		public AnnotationResult(int index, String text, Annotation annotation, Throwable error) {
+			this.index = index;
+			this.text = text;
+			this.annotation = annotation;
+			this.error = error;
+		}
+
+		public boolean isFailed() {
+			return annotation == null;
+		}
+
+		public String toString() {
+			return String.format("[%d]:%s", index, isFailed() ? "FAILED(" + error + ")" : "OK");
+		}
+	}
+
+	/**
+	 * Handler of batch annotation results, called in input order
+	 * 
+	 * @author Jihee
+	 */
+	public static interface AnnotationHandler {
+
+		public void handle(AnnotationResult result);
+	}
+
+	/**
+	 * Policy on a failed annotation
+	 * 
+	 * @author Jihee
+	 */
+	public static enum FailurePolicy {
+		/** fail at once */
+		NO_RETRY,
+		/** retry once only if the failure looks transient (I/O or interruption) */
+		RETRY_TRANSIENT,
+		/** re-run without the expensive annotators in DEGRADABLE_ANNOTATORS (parse, dcoref, ...) and the annotators requiring them */
+		DEGRADE
+	}
+
+	/**
+	 * Counters and latency histogram of an annotator
+	 * 
+	 * @author Jihee
+	 */
+	public static class AnnotatorStats {
+
+		// upper bounds of latency buckets in microseconds, growing by 25% from 100us to about 10 minutes
+		private static final long[] BUCKET_BOUNDS = new long[71];
+		static {
+			double bound = 100;
+			for (int i = 0; i < BUCKET_BOUNDS.length; i++, bound *= 1.25)
+				BUCKET_BOUNDS[i] = (long) bound;
+		}
+
+		public final String name;
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong tokens = new AtomicLong();
+		private final AtomicLong sentences = new AtomicLong();
+		private final AtomicLongArray histogram = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+
+		public AnnotatorStats(String name) {
+			this.name = name;
+		}
+
+		public void record(long nanos, boolean failed) {
+			record(nanos, failed, 0, 0);
+		}
+
+		public void record(long nanos, boolean failed, int num_tokens, int num_sentences) {
+			count.incrementAndGet();
+			if (failed)
+				failures.incrementAndGet();
+			totalNanos.addAndGet(nanos);
+			tokens.addAndGet(num_tokens);
+			sentences.addAndGet(num_sentences);
+			histogram.incrementAndGet(toBucket(nanos / 1000));
+		}
+
+		public void reset() {
+			count.set(0);
+			failures.set(0);
+			totalNanos.set(0);
+			tokens.set(0);
+			sentences.set(0);
+			for (int i = 0; i < histogram.length(); i++)
+				histogram.set(i, 0);
+		}
+
+		private static int toBucket(long micros) {
+			int bucket = Arrays.binarySearch(BUCKET_BOUNDS, micros);
+			return bucket >= 0 ? bucket : -bucket - 1;
+		}
+
+		public long getCount() {
+			return count.get();
+		}
+
+		public long getFailures() {
+			return failures.get();
+		}
+
+		public double getTotalMillis() {
+			return totalNanos.get() / 1e6;
+		}
+
+		public double getMeanMillis() {
+			long n = count.get();
+			return n > 0 ? totalNanos.get() / 1e6 / n : 0;
+		}
+
+		/**
+		 * Approximate percentile of latency (upper bound of the bucket, within 25%)
+		 * 
+		 * @param percentile
+		 *            between 0 and 100
+		 * @return
+		 */
+		public double getPercentileMillis(double percentile) {
+			long[] counts = getHistogram();
+			long total = 0;
+			for (long c : counts)
+				total += c;
+			if (total == 0)
+				return 0;
+			long rank = (long) Math.ceil(total * percentile / 100.0);
+			long seen = 0;
+			for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+				seen += counts[i];
+				if (seen >= Math.max(rank, 1))
+					return BUCKET_BOUNDS[i] / 1000.0;
+			}
+			return Double.POSITIVE_INFINITY;
+		}
+
+		public long getTokens() {
+			return tokens.get();
+		}
+
+		public long getSentences() {
+			return sentences.get();
+		}
+
+		/**
+		 * Tokens processed per second of this annotator's own wall time
+		 * 
+		 * @return
+		 */
+		public double getTokensPerSecond() {
+			long nanos = totalNanos.get();
+			return nanos > 0 ? tokens.get() * 1e9 / nanos : 0;
+		}
+
+		/**
+		 * Sentences processed per second of this annotator's own wall time
+		 * 
+		 * @return
+		 */
+		public double getSentencesPerSecond() {
+			long nanos = totalNanos.get();
+			return nanos > 0 ? sentences.get() * 1e9 / nanos : 0;
+		}
+
+		/**
+		 * Upper bounds of latency buckets in microseconds (the last bucket has no upper bound)
+		 * 
+		 * @return
+		 */
+		public static long[] getBucketBounds() {
+			return BUCKET_BOUNDS.clone();
+		}
+
+		/**
+		 * Number of calls per latency bucket
+		 * 
+		 * @return
+		 */
+		public long[] getHistogram() {
+			long[] counts = new long[histogram.length()];
+			for (int i = 0; i < counts.length; i++)
+				counts[i] = histogram.get(i);
+			return counts;
+		}
+
+		public String toString() {
+			return String.format("%s: count=%d, failures=%d, total=%.1fms, mean=%.2fms, p50=%.2fms, p99=%.2fms, tokens/s=%.1f, sentences/s=%.1f", name, getCount(), getFailures(), getTotalMillis(), getMeanMillis(), getPercentileMillis(50), getPercentileMillis(99), getTokensPerSecond(), getSentencesPerSecond());
+		}
+	}
+
+	/**
+	 * Annotator recording its latency and failures into AnnotatorStats
+	 * 
+	 * @author Jihee
+	 */
+	private static class TimedAnnotator implements Annotator {
+
+		private final Annotator annotator;
+		private final AnnotatorStats stats;
+
+		public TimedAnnotator(Annotator annotator, AnnotatorStats stats) {
+			this.annotator = annotator;
+			this.stats = stats;
+		}
+
+		public void annotate(Annotation annotation) {
+			long start = System.nanoTime();
+			boolean failed = true;
+			try {
+				annotator.annotate(annotation);
+				failed = false;
+			} finally {
+				stats.record(System.nanoTime() - start, failed, countTokens(annotation), countSentences(annotation));
+			}
+		}
+
+		public Set<Requirement> requirementsSatisfied() {
+			return annotator.requirementsSatisfied();
+		}
+
+		public Set<Requirement> requires() {
+			return annotator.requires();
+		}
+	}
+
 	public StanfordNlpWrapper(String prop_file) throws IOException {
 		prop = new Properties();
 		prop.loadFromXML(new FileInputStream(prop_file));
@@ -171,21 +448,125 @@ public class StanfordNlpWrapper {
 	}
 
 	public void loadPosTagger() {
-		tagger = new MaxentTagger(prop.getProperty("pos.model"));
+		final String model_file = prop.getProperty("pos.model");
+		tagger = acquireModel("StanfordNLP.pos", model_file, new ModelLoader<MaxentTagger>() {
+			public MaxentTagger load() {
+				return new MaxentTagger(model_file);
+			}
+		});
 	}
 
 	public void loadLexParser() {
-		parser = LexicalizedParser.getParserFromFile(prop.getProperty("parse.model"), new Options());
+		final String model_file = prop.getProperty("parse.model");
+		parser = acquireModel("StanfordNLP.parse", model_file, new ModelLoader<LexicalizedParser>() {
+			public LexicalizedParser load() {
+				return LexicalizedParser.getParserFromFile(model_file, new Options());
+			}
+		});
 		parserK = new ExhaustivePCFGParser(parser.bg, parser.ug, parser.getLexicon(), parser.getOp(), parser.stateIndex, parser.wordIndex, parser.tagIndex);
 	}
 
+	// MaxentTagger and LexicalizedParser create per-sentence state in each call, so a loaded model can be shared by all the instances
+	private <T> T acquireModel(String type, String path, ModelLoader<T> loader) {
+		try {
+			return models.acquire(type, path, loader);
+		} catch (IOException e) {
+			throw new RuntimeIOException(e);
+		}
+	}
+
+	/**
+	 * Release the models acquired from ModelRegistry (they stay loaded until evicted by ModelRegistry.evictUnused())
+	 */
+	public void release() {
+		tagger = null;
+		parser = null;
+		parserK = null;
+		models.releaseAll();
+	}
+
 	public void loadAll() {
-		annotator = new StanfordCoreNLP(prop);
+		InstrumentedCoreNLP nlp = new InstrumentedCoreNLP(prop);
+		annotator = nlp;
+		pipeline = nlp;
+		degradedPipeline = createDegradedPipeline(nlp.annotators);
 	}
 
 	public void loadAll(String annotator_spec) {
 		prop.setProperty("annotators", annotator_spec);
-		annotator = new StanfordCoreNLP(prop);
+		loadAll();
+	}
+
+	/**
+	 * StanfordCoreNLP whose annotators are wrapped by TimedAnnotator as they are added<br>
+	 * - the wrapped instances are exactly the ones this pipeline uses, and StanfordCoreNLP.annotate() still does its own accounting
+	 * 
+	 * @author Jihee
+	 */
+	private class InstrumentedCoreNLP extends StanfordCoreNLP {
+
+		private Map<String, Annotator> annotators; // filled by addAnnotator() called within the super constructor, so not initialized here
+
+		public InstrumentedCoreNLP(Properties prop) {
+			super(prop);
+		}
+
+		public void addAnnotator(Annotator annotator) {
+			if (annotators == null)
+				annotators = new LinkedHashMap<String, Annotator>();
+			// StanfordCoreNLP adds one annotator for each name of the "annotators" property in order
+			String name = toAnnotatorNames(prop.getProperty("annotators")).get(annotators.size());
+			Annotator timed = new TimedAnnotator(annotator, getStats(name));
+			annotators.put(name, timed);
+			super.addAnnotator(timed);
+		}
+	}
+
+	private static List<String> toAnnotatorNames(String annotator_spec) {
+		List<String> names = new ArrayList<String>();
+		for (String name : annotator_spec.split("[, \t]+"))
+			if (!name.trim().isEmpty())
+				names.add(name.trim());
+		return names;
+	}
+
+	/**
+	 * Build the instrumented pipeline (and the degraded one) from the given annotators in order
+	 * 
+	 * @param annotators
+	 *            annotators keyed by their names
+	 */
+	void loadPipelines(Map<String, Annotator> annotators) {
+		Map<String, Annotator> timed_annotators = new LinkedHashMap<String, Annotator>();
+		pipeline = new AnnotationPipeline();
+		for (String name : annotators.keySet()) {
+			Annotator a = new TimedAnnotator(annotators.get(name), getStats(name));
+			timed_annotators.put(name, a);
+			pipeline.addAnnotator(a);
+		}
+		degradedPipeline = createDegradedPipeline(timed_annotators);
+	}
+
+	/**
+	 * Build the pipeline without the annotators in DEGRADABLE_ANNOTATORS and the annotators requiring what they satisfy
+	 * 
+	 * @param annotators
+	 *            annotators keyed by their names in pipeline order
+	 * @return degraded pipeline, or null if nothing is dropped
+	 */
+	private static AnnotationPipeline createDegradedPipeline(Map<String, Annotator> annotators) {
+		AnnotationPipeline degraded = new AnnotationPipeline();
+		Set<Requirement> dropped = new HashSet<Requirement>();
+		boolean degradable = false;
+		for (String name : annotators.keySet()) {
+			Annotator a = annotators.get(name);
+			if (DEGRADABLE_ANNOTATORS.contains(name) || !Collections.disjoint(a.requires(), dropped)) {
+				dropped.addAll(a.requirementsSatisfied());
+				degradable = true;
+			} else
+				degraded.addAnnotator(a);
+		}
+		return degradable ? degraded : null;
 	}
 
 	public void loadTimeAnnotator() throws Exception {
@@ -193,6 +574,93 @@ public class StanfordNlpWrapper {
 		normalizer = SUTimeMain.getPipeline(prop, true);
 	}
 
+	/**
+	 * Get (or create) the statistics of an annotator
+	 * 
+	 * @param name
+	 *            annotator name, DOCUMENT_STATS for whole annotate() calls, or SUTIME_STATS for normalizeTime() calls
+	 * @return
+	 */
+	public AnnotatorStats getStats(String name) {
+		synchronized (stats) {
+			AnnotatorStats s = stats.get(name);
+			if (s == null)
+				stats.put(name, s = new AnnotatorStats(name));
+			return s;
+		}
+	}
+
+	/**
+	 * Get the statistics of all annotators in pipeline order
+	 * 
+	 * @return
+	 */
+	public List<AnnotatorStats> getAllStats() {
+		synchronized (stats) {
+			return new ArrayList<AnnotatorStats>(stats.values());
+		}
+	}
+
+	public long getRetryCount() {
+		return retryCount.get();
+	}
+
+	public long getDegradeCount() {
+		return degradeCount.get();
+	}
+
+	public void resetStats() {
+		for (AnnotatorStats s : getAllStats())
+			s.reset();
+		retryCount.set(0);
+		degradeCount.set(0);
+	}
+
+	/**
+	 * Make a report of the statistics of all annotators
+	 * 
+	 * @return
+	 */
+	public String getStatsReport() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-10s %8s %8s %12s %10s %10s %10s %10s %12s %12s\n", "annotator", "count", "failures", "total(ms)", "mean(ms)", "p50(ms)", "p90(ms)", "p99(ms)", "tokens/s", "sentences/s"));
+		for (AnnotatorStats s : getAllStats())
+			sb.append(String.format("%-10s %8d %8d %12.1f %10.2f %10.2f %10.2f %10.2f %12.1f %12.1f\n", s.name, s.getCount(), s.getFailures(), s.getTotalMillis(), s.getMeanMillis(), s.getPercentileMillis(50), s.getPercentileMillis(90), s.getPercentileMillis(99), s.getTokensPerSecond(), s.getSentencesPerSecond()));
+		sb.append(String.format("retries=%d, degrades=%d", getRetryCount(), getDegradeCount()));
+		return sb.toString();
+	}
+
+	/**
+	 * Start dumping the statistics report periodically
+	 * 
+	 * @param period_sec
+	 * @param out
+	 */
+	public synchronized void startStatsReport(long period_sec, final PrintStream out) {
+		stopStatsReport();
+		reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "StanfordNlpWrapper-reporter");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		reporter.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				out.println(getStatsReport());
+			}
+		}, period_sec, period_sec, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Stop dumping the statistics report
+	 */
+	public synchronized void stopStatsReport() {
+		if (reporter != null)
+			reporter.shutdownNow();
+		reporter = null;
+	}
+
 	public List<Word> tokenize(String text) {
 		return tokenizerFactory.getTokenizer(new StringReader(text)).tokenize();
 	}
@@ -225,30 +693,177 @@ public class StanfordNlpWrapper {
 		return trees;
 	}
 
+	/**
+	 * Annotate a text following the failure policy
+	 * 
+	 * @param text
+	 * @return annotation, or null if failed
+	 */
 	public Annotation annotate(String text) {
-		Annotation annotation = new Annotation(text);
 		try {
-			annotator.annotate(annotation);
-			return annotation;
-		} catch (Exception e) {
+			return tryAnnotate(text);
+		} catch (RuntimeException e) {
+			return null;
+		} catch (OutOfMemoryError e) {
+			if (failurePolicy != FailurePolicy.DEGRADE)
+				throw e;
+			return null;
+		}
+	}
+
+	private Annotation tryAnnotate(String text) {
+		long start = System.nanoTime();
+		Annotation annotation = null;
+		try {
 			try {
-				annotator.annotate(annotation);
-				return annotation;
-			} catch (Exception e2) {
-				return null;
+				annotation = annotate(text, pipeline);
+			} catch (RuntimeException e) {
+				annotation = recover(text, e);
+			} catch (OutOfMemoryError e) {
+				if (failurePolicy != FailurePolicy.DEGRADE)
+					throw e;
+				annotation = recover(text, e);
+			}
+			return annotation;
+		} finally {
+			getStats(DOCUMENT_STATS).record(System.nanoTime() - start, annotation == null, countTokens(annotation), countSentences(annotation));
+		}
+	}
+
+	private static int countTokens(Annotation annotation) {
+		List<CoreLabel> tokens = annotation != null ? annotation.get(TokensAnnotation.class) : null;
+		return tokens != null ? tokens.size() : 0;
+	}
+
+	private static int countSentences(Annotation annotation) {
+		List<CoreMap> sentences = annotation != null ? annotation.get(SentencesAnnotation.class) : null;
+		return sentences != null ? sentences.size() : 0;
+	}
+
+	private Annotation annotate(String text, AnnotationPipeline pipeline) {
+		Annotation annotation = new Annotation(text);
+		if (pipeline != null)
+			pipeline.annotate(annotation);
+		else
+			annotator.annotate(annotation);
+		return annotation;
+	}
+
+	private Annotation recover(String text, Throwable e) {
+		if (failurePolicy == FailurePolicy.RETRY_TRANSIENT && isTransient(e)) {
+			retryCount.incrementAndGet();
+			return annotate(text, pipeline);
+		}
+		if (failurePolicy == FailurePolicy.DEGRADE && degradedPipeline != null) {
+			degradeCount.incrementAndGet();
+			return annotate(text, degradedPipeline);
+		}
+		if (e instanceof Error)
+			throw (Error) e;
+		throw (RuntimeException) e;
+	}
+
+	/**
+	 * Check whether a failure is worth retrying: deterministic failures (e.g. parse timeouts or OOM on long sentences) would fail again
+	 * 
+	 * @param e
+	 * @return
+	 */
+	private static boolean isTransient(Throwable e) {
+		if (e instanceof Error)
+			return false;
+		for (Throwable cause = e; cause != null; cause = cause.getCause())
+			if (cause instanceof IOException || cause instanceof RuntimeIOException || cause instanceof InterruptedException || cause instanceof RuntimeInterruptedException)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Annotate a collection of texts using a pool of worker threads
+	 * 
+	 * @param texts
+	 * @param num_threads
+	 * @return annotation results in input order
+	 * @throws InterruptedException
+	 */
+	public List<AnnotationResult> annotate(Iterable<String> texts, int num_threads) throws InterruptedException {
+		final List<AnnotationResult> results = new ArrayList<AnnotationResult>();
+		annotate(texts.iterator(), num_threads, new AnnotationHandler() {
+			public void handle(AnnotationResult result) {
+				results.add(result);
 			}
+		});
+		return results;
+	}
+
+	/**
+	 * Annotate a stream of texts using a pool of worker threads<br>
+	 * - results are passed to the handler in input order, and at most num_threads * DEFAULT_PENDING_PER_THREAD texts are held in memory at once
+	 * 
+	 * @param texts
+	 * @param num_threads
+	 * @param handler
+	 * @throws InterruptedException
+	 */
+	public void annotate(Iterator<String> texts, int num_threads, AnnotationHandler handler) throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(num_threads);
+		LinkedList<Future<Annotation>> futures = new LinkedList<Future<Annotation>>();
+		LinkedList<String> pending = new LinkedList<String>();
+		int max_pending = num_threads * DEFAULT_PENDING_PER_THREAD;
+		int index = 0;
+		try {
+			while (texts.hasNext()) {
+				final String text = texts.next();
+				futures.add(pool.submit(new Callable<Annotation>() {
+					public Annotation call() {
+						return tryAnnotate(text);
+					}
+				}));
+				pending.add(text);
+				if (futures.size() >= max_pending)
+					handler.handle(toAnnotationResult(index++, pending.removeFirst(), futures.removeFirst()));
+			}
+			while (!futures.isEmpty())
+				handler.handle(toAnnotationResult(index++, pending.removeFirst(), futures.removeFirst()));
+		} finally {
+			pool.shutdownNow();
 		}
 	}
 
+	private static AnnotationResult toAnnotationResult(int index, String text, Future<Annotation> future) throws InterruptedException {
+		try {
+			return new AnnotationResult(index, text, future.get(), null);
+		} catch (ExecutionException e) {
+			return new AnnotationResult(index, text, null, e.getCause());
+		}
+	}
+
+	/**
+	 * Normalize time expressions in a text following the failure policy (DEGRADE works as NO_RETRY)
+	 * 
+	 * @param text
+	 * @param date
+	 * @return annotated XML string, or null if failed
+	 */
 	public String normalizeTime(String text, String date) {
+		long start = System.nanoTime();
+		boolean failed = true;
 		try {
-			return SUTimeMain.textToAnnotatedXml(normalizer, text, date);
-		} catch (Exception e) {
+			String xml;
 			try {
-				return SUTimeMain.textToAnnotatedXml(normalizer, text, date);
-			} catch (Exception e2) {
-				return null;
+				xml = SUTimeMain.textToAnnotatedXml(normalizer, text, date);
+			} catch (RuntimeException e) {
+				if (failurePolicy != FailurePolicy.RETRY_TRANSIENT || !isTransient(e))
+					return null;
+				retryCount.incrementAndGet();
+				xml = SUTimeMain.textToAnnotatedXml(normalizer, text, date);
 			}
+			failed = false;
+			return xml;
+		} catch (RuntimeException e) {
+			return null;
+		} finally {
+			getStats(SUTIME_STATS).record(System.nanoTime() - start, failed);
 		}
 	}
 
@@ -5,21 +5,47 @@ package kr.jihee.irnlp_toolkit.ir;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
+import kr.jihee.irnlp_toolkit.Env;
 import kr.jihee.irnlp_toolkit.ir.LuceneWrapper;
+import kr.jihee.irnlp_toolkit.ir.LuceneWrapper.DirectoryType;
+import kr.jihee.irnlp_toolkit.ir.LuceneWrapper.ParallelSearcherFactory;
+import kr.jihee.irnlp_toolkit.ir.LuceneWrapper.SearchHandler;
 import kr.jihee.irnlp_toolkit.ir.LuceneWrapper.SearchedEntry;
+import kr.jihee.irnlp_toolkit.nlp.HannanumWrapper;
+import kr.jihee.irnlp_toolkit.nlp.HannanumWrapper.TaggedMorp;
 
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NRTCachingDirectory;
+import org.apache.lucene.util.Version;
 
 /**
  * Unit test for functions using Lucene
@@ -28,6 +54,11 @@ import org.apache.lucene.search.IndexSearcher;
  */
 public class TestLucene extends TestCase {
 
+	public static final boolean TEST_FIELDS = true;
+	public static final boolean TEST_PAGING = true;
+	public static final boolean TEST_PARALLEL = true;
+	public static final boolean TEST_KOREAN = false;
+
 	/**
 	 * LuceneWrapper Test
 	 * 
@@ -70,4 +101,350 @@ public class TestLucene extends TestCase {
 			System.out.printf("(%.4f) [%s] %s\n", searched_entry.score, searched_entry.doc.get("label"), searched_entry.doc.get("contents"));
 		assertEquals(2, searched_entries.size());
 	}
+
+	private static LuceneWrapper createIndex(String index_dir) throws IOException {
+		LuceneWrapper lucene = new LuceneWrapper(index_dir);
+		IndexWriter writer = lucene.createIndexWriter(true);
+		ArrayList<String[]> index_entries = new ArrayList<String[]>();
+		index_entries.add(new String[] { "Apple", "Apple Company in United States (US)" });
+		index_entries.add(new String[] { "Google", "Google Company in United States (US)" });
+		index_entries.add(new String[] { "Microsoft", "Microsoft (MS) Company in United States (US)" });
+		index_entries.add(new String[] { "MIT", "Massachusetts Institute of Technology (MIT) in United States (US)" });
+		index_entries.add(new String[] { "Stanford", "Stanford University in United States (US)" });
+		index_entries.add(new String[] { "Cambridge", "Cambridge University in United Kingdom (UK)" });
+		index_entries.add(new String[] { "Oxford", "Oxford University in United Kingdom (UK)" });
+		index_entries.add(new String[] { "KAIST", "Korea Advanced Institute of Science and Technology (KAIST) in South Korea" });
+		index_entries.add(new String[] { "POSTECH", "Pohang University of Science and Technology (POSTECH) in South Korea" });
+		index_entries.add(new String[] { "Seoul National University", "Seoul National University (SNU) in South Korea" });
+		for (String[] entry : index_entries) {
+			Document doc = new Document();
+			doc.add(new StringField("label", entry[0], Field.Store.YES));
+			doc.add(new TextField("contents", entry[1], Field.Store.YES));
+			writer.addDocument(doc);
+		}
+		writer.close();
+		return lucene;
+	}
+
+	/**
+	 * LuceneWrapper Test for field-selective, lazy and score-only search
+	 * 
+	 * @throws IOException
+	 * @throws ParseException
+	 */
+	public void testLuceneWrapperForFields() throws IOException, ParseException {
+		System.out.println("\n----- testLuceneWrapperForFields() ------------------------------");
+		if (!TEST_FIELDS)
+			return;
+
+		LuceneWrapper lucene = createIndex(System.getProperty("user.home") + "/organization-fields.idx");
+		IndexSearcher searcher = lucene.createIndexSearcher();
+		QueryParser parser = lucene.createQueryParser("contents");
+		String query = "Korea AND Science";
+		List<SearchedEntry> searched_entries = lucene.search(searcher, parser.parse(query), 20);
+		assertEquals(2, searched_entries.size());
+
+		List<SearchedEntry> label_entries = lucene.search(searcher, parser.parse(query), 20, Collections.singleton("label"));
+		assertEquals(2, label_entries.size());
+		assertEquals(searched_entries.get(0).doc.get("label"), label_entries.get(0).doc.get("label"));
+		assertNull(label_entries.get(0).doc.get("contents"));
+
+		List<SearchedEntry> lazy_entries = lucene.searchLazily(searcher, parser.parse(query), 20, null);
+		assertNull(lazy_entries.get(0).doc);
+		assertEquals(searched_entries.get(0).doc.get("contents"), lazy_entries.get(0).getDoc().get("contents"));
+
+		ScoreDoc[] scored_docs = lucene.searchScores(searcher, parser.parse(query), 20);
+		assertEquals(2, scored_docs.length);
+		assertEquals(searched_entries.get(0).docID, scored_docs[0].doc);
+	}
+
+	/**
+	 * LuceneWrapper Test for paginated streaming search
+	 * 
+	 * @throws IOException
+	 * @throws ParseException
+	 */
+	public void testLuceneWrapperForPaging() throws IOException, ParseException {
+		System.out.println("\n----- testLuceneWrapperForPaging() ------------------------------");
+		if (!TEST_PAGING)
+			return;
+
+		LuceneWrapper lucene = createIndex(System.getProperty("user.home") + "/organization-paging.idx");
+		IndexSearcher searcher = lucene.createIndexSearcher();
+		QueryParser parser = lucene.createQueryParser("contents");
+
+		final List<SearchedEntry> streamed_entries = new ArrayList<SearchedEntry>();
+		int count = lucene.search(searcher, parser.parse("United"), 20, 3, null, new SearchHandler() {
+			public boolean handle(SearchedEntry searched_entry) {
+				streamed_entries.add(searched_entry);
+				return true;
+			}
+		});
+		assertEquals(7, count);
+		List<SearchedEntry> united_entries = lucene.search(searcher, parser.parse("United"), 20);
+		for (int i = 0; i < count; i++)
+			assertEquals(united_entries.get(i).docID, streamed_entries.get(i).docID);
+		assertEquals(4, lucene.search(searcher, parser.parse("United"), 4, 3, null, new SearchHandler() {
+			public boolean handle(SearchedEntry searched_entry) {
+				return true;
+			}
+		}));
+		assertEquals(count, lucene.search(searcher, parser.parse("United"), 20, null, new SearchHandler() {
+			public boolean handle(SearchedEntry searched_entry) {
+				return true;
+			}
+		}));
+	}
+
+	/**
+	 * LuceneWrapper Test for segment-parallel searchers
+	 * 
+	 * @throws IOException
+	 * @throws ParseException
+	 * @throws InterruptedException
+	 */
+	public void testLuceneWrapperForParallel() throws IOException, ParseException, InterruptedException {
+		System.out.println("\n----- testLuceneWrapperForParallel() ------------------------------");
+		if (!TEST_PARALLEL)
+			return;
+
+		// several segments, so that they are searched in parallel
+		String index_dir = System.getProperty("user.home") + "/organization-parallel.idx";
+		LuceneWrapper lucene = new LuceneWrapper(index_dir);
+		IndexWriter writer = lucene.createIndexWriter(true);
+		for (int i = 0; i < 4; i++) {
+			for (int j = 0; j < 50; j++) {
+				Document doc = new Document();
+				doc.add(new StringField("label", "doc" + i + "-" + j, Field.Store.YES));
+				doc.add(new TextField("contents", String.format("segment %d document %d %s", i, j, j % 3 == 0 ? "Korea" : "United States"), Field.Store.YES));
+				writer.addDocument(doc);
+			}
+			writer.commit();
+		}
+		writer.close();
+
+		QueryParser parser = lucene.createQueryParser("contents");
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			IndexSearcher serial_searcher = lucene.createIndexSearcher();
+			IndexSearcher parallel_searcher = lucene.createIndexSearcher(executor);
+			assertTrue(parallel_searcher.getIndexReader().leaves().size() > 1);
+			for (String query : Arrays.asList("Korea", "United AND States", "segment AND document")) {
+				List<SearchedEntry> serial_entries = lucene.search(serial_searcher, parser.parse(query), 30);
+				List<SearchedEntry> parallel_entries = lucene.search(parallel_searcher, parser.parse(query), 30);
+				assertEquals(serial_entries.size(), parallel_entries.size());
+				for (int i = 0; i < serial_entries.size(); i++) {
+					assertEquals(serial_entries.get(i).docID, parallel_entries.get(i).docID);
+					assertEquals(serial_entries.get(i).score, parallel_entries.get(i).score, 1e-6);
+				}
+			}
+
+			IndexSearcher factory_searcher = new ParallelSearcherFactory(executor).newSearcher(serial_searcher.getIndexReader());
+			assertEquals(serial_searcher.search(parser.parse("Korea"), 100).totalHits, factory_searcher.search(parser.parse("Korea"), 100).totalHits);
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * LuceneWrapper Test for bulk indexing
+	 * 
+	 * @throws IOException
+	 * @throws ParseException
+	 * @throws InterruptedException
+	 */
+	public void testLuceneWrapperForBulk() throws IOException, ParseException, InterruptedException {
+		System.out.println("\n----- testLuceneWrapperForBulk() ------------------------------");
+		String index_dir = System.getProperty("user.home") + "/organization-bulk.idx";
+
+		ArrayList<Document> docs = new ArrayList<Document>();
+		for (int i = 0; i < 1000; i++) {
+			Document doc = new Document();
+			doc.add(new StringField("label", "doc" + i, Field.Store.YES));
+			doc.add(new TextField("contents", i % 10 == 0 ? "Science in South Korea" : "Company in United States", Field.Store.YES));
+			docs.add(doc);
+		}
+
+		LuceneWrapper lucene = new LuceneWrapper(index_dir);
+		IndexWriter writer = lucene.createIndexWriter(true, 4, new TieredMergePolicy());
+		assertEquals(1000, lucene.bulkIndex(writer, docs.iterator(), 4, 300));
+		writer.close();
+
+		lucene = new LuceneWrapper(index_dir, DirectoryType.MMAP, true);
+		assertTrue(lucene.index_dir instanceof MMapDirectory);
+		assertTrue(lucene.getDirectory() instanceof NRTCachingDirectory);
+		assertTrue(lucene.preload() > 0);
+		IndexSearcher searcher = lucene.createIndexSearcher();
+		assertEquals(1000, searcher.getIndexReader().numDocs());
+		QueryParser parser = lucene.createQueryParser("contents");
+		assertEquals(100, lucene.searchScores(searcher, parser.parse("Korea AND Science"), 1000).length);
+
+		final Iterator<Document> iterator = docs.iterator();
+		Iterator<Document> failing_docs = new Iterator<Document>() {
+			private int n = 0;
+
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			public Document next() {
+				if (++n > 100)
+					throw new IllegalStateException("Broken document source at " + n);
+				return iterator.next();
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+		lucene = new LuceneWrapper(index_dir);
+		writer = lucene.createIndexWriter(true, 4, new TieredMergePolicy());
+		try {
+			lucene.bulkIndex(writer, failing_docs, 4, 0);
+			fail("IllegalStateException should be thrown from bulkIndex()");
+		} catch (IllegalStateException e) {
+			System.out.println(e.getMessage());
+		} finally {
+			writer.rollback();
+		}
+	}
+
+	/**
+	 * LuceneWrapper Test for managed search mode
+	 * 
+	 * @throws IOException
+	 * @throws ParseException
+	 * @throws InterruptedException
+	 */
+	public void testLuceneWrapperForManaged() throws IOException, ParseException, InterruptedException {
+		System.out.println("\n----- testLuceneWrapperForManaged() ------------------------------");
+		String index_dir = System.getProperty("user.home") + "/organization-nrt.idx";
+
+		LuceneWrapper lucene = new LuceneWrapper(index_dir);
+		lucene.openManagedSearcher(true);
+		lucene.enableQueryCache(100);
+		QueryParser parser = lucene.createQueryParser("contents");
+		String query = "Korea AND Science";
+		assertEquals(0, lucene.search(parser.parse(query), 20).size());
+
+		Document doc = new Document();
+		doc.add(new StringField("label", "KAIST", Field.Store.YES));
+		doc.add(new TextField("contents", "Korea Advanced Institute of Science and Technology (KAIST) in South Korea", Field.Store.YES));
+		lucene.waitForGeneration(lucene.addDocument(doc));
+		assertEquals(0, lucene.getQueryCacheStats().hitCount());
+
+		List<SearchedEntry> searched_entries = lucene.search(parser.parse(query), 20);
+		for (SearchedEntry searched_entry : searched_entries)
+			System.out.printf("(%.4f) [%s] %s\n", searched_entry.score, searched_entry.doc.get("label"), searched_entry.doc.get("contents"));
+		assertEquals(1, searched_entries.size());
+		float score = searched_entries.get(0).score;
+		searched_entries.get(0).score = -1;
+		searched_entries.get(0).doc.removeField("label");
+		((Field) searched_entries.get(0).doc.getField("contents")).setStringValue("modified");
+		List<SearchedEntry> cached_entries = lucene.search(parser.parse(query), 20);
+		assertEquals(1, cached_entries.size());
+		assertEquals(1, lucene.getQueryCacheStats().hitCount());
+		assertEquals(score, cached_entries.get(0).score);
+		assertEquals("KAIST", cached_entries.get(0).doc.get("label"));
+		assertTrue(cached_entries.get(0).doc.get("contents").startsWith("Korea Advanced"));
+
+		IndexSearcher searcher = lucene.acquireSearcher();
+		try {
+			lucene.search(searcher, parser.parse(query), 20, new LinkedHashSet<String>(Arrays.asList("label", "contents")));
+			lucene.search(searcher, parser.parse(query), 20, new LinkedHashSet<String>(Arrays.asList("contents", "label")));
+			assertEquals(2, lucene.getQueryCacheStats().hitCount());
+		} finally {
+			lucene.releaseSearcher(searcher);
+		}
+		lucene.closeManagedSearcher();
+	}
+
+	/**
+	 * LuceneWrapper Test for per-field analyzers
+	 * 
+	 * @throws Exception
+	 */
+	public void testLuceneWrapperForAnalyzer() throws Exception {
+		System.out.println("\n----- testLuceneWrapperForAnalyzer() ------------------------------");
+		String index_dir = System.getProperty("user.home") + "/organization-analyzer.idx";
+
+		HannanumWrapper hannanum = null;
+		Map<String, Analyzer> field_analyzers = new HashMap<String, Analyzer>();
+		field_analyzers.put("label", new KeywordAnalyzer());
+		if (TEST_KOREAN) {
+			hannanum = new HannanumWrapper(Env.HANNANUM_CFG);
+			hannanum.loadPosTagger();
+			field_analyzers.put("contents_ko", new HannanumAnalyzer(hannanum));
+		}
+
+		LuceneWrapper lucene = new LuceneWrapper(index_dir);
+		lucene.setAnalyzer(new StandardAnalyzer(Version.LUCENE_48), field_analyzers);
+		IndexWriter writer = lucene.createIndexWriter(true);
+		ArrayList<String[]> index_entries = new ArrayList<String[]>();
+		index_entries.add(new String[] { "Samsung Electronics", "Samsung Electronics in South Korea", "삼성전자는 대한민국에 본사를 둔 다국적 기업이다." });
+		index_entries.add(new String[] { "LG Electronics", "LG Electronics in South Korea", "LG전자는 대한민국의 전자 제품 생산 기업이다." });
+		for (String[] entry : index_entries) {
+			Document doc = new Document();
+			doc.add(new TextField("label", entry[0], Field.Store.YES));
+			doc.add(new TextField("contents", entry[1], Field.Store.YES));
+			doc.add(new TextField("contents_ko", entry[2], Field.Store.YES));
+			writer.addDocument(doc);
+		}
+		writer.close();
+
+		IndexSearcher searcher = lucene.createIndexSearcher();
+		assertEquals(1, lucene.search(searcher, lucene.createQueryParser("label").parse("\"Samsung Electronics\""), 20).size());
+		assertEquals(0, lucene.search(searcher, lucene.createQueryParser("label").parse("Samsung"), 20).size());
+		assertEquals(2, lucene.search(searcher, lucene.createQueryParser("contents").parse("Electronics"), 20).size());
+
+		if (TEST_KOREAN) {
+			List<SearchedEntry> searched_entries = lucene.search(searcher, lucene.createQueryParser("contents_ko").parse("기업"), 20);
+			for (SearchedEntry searched_entry : searched_entries)
+				System.out.printf("(%.4f) [%s] %s\n", searched_entry.score, searched_entry.doc.get("label"), searched_entry.doc.get("contents_ko"));
+			assertEquals(2, searched_entries.size());
+			assertEquals(1, lucene.search(searcher, lucene.createQueryParser("contents_ko").parse("본사"), 20).size());
+			System.out.println(((HannanumAnalyzer) field_analyzers.get("contents_ko")).getCacheStats());
+			hannanum.unload();
+		}
+	}
+
+	/**
+	 * HannanumAnalyzer Test for POS tag filtering (morphemes are given without HanNanum)
+	 * 
+	 * @throws IOException
+	 */
+	public void testHannanumAnalyzerForTags() throws IOException {
+		System.out.println("\n----- testHannanumAnalyzerForTags() ------------------------------");
+		final Map<String, List<TaggedMorp>> analyzed = new HashMap<String, List<TaggedMorp>>();
+		analyzed.put("Samsung은", Arrays.asList(new TaggedMorp("Samsung", "F"), new TaggedMorp("은", "JX")));
+		analyzed.put("본사를", Arrays.asList(new TaggedMorp("본사", "NC"), new TaggedMorp("를", "JC")));
+		analyzed.put("둔", Arrays.asList(new TaggedMorp("두", "PV"), new TaggedMorp("ㄴ", "ET")));
+		analyzed.put("큰", Arrays.asList(new TaggedMorp("크", "PA"), new TaggedMorp("ㄴ", "ET")));
+		analyzed.put("3개의", Arrays.asList(new TaggedMorp("3", "NN"), new TaggedMorp("개", "NB"), new TaggedMorp("의", "JC")));
+		analyzed.put("대한민국", Arrays.asList(new TaggedMorp("대한민국", "NQ")));
+
+		HannanumAnalyzer analyzer = new HannanumAnalyzer(null) {
+			public List<TaggedMorp> analyze(String eojeol) {
+				return analyzed.get(eojeol);
+			}
+		};
+		List<String> terms = new ArrayList<String>();
+		List<String> types = new ArrayList<String>();
+		TokenStream stream = analyzer.tokenStream("contents_ko", "Samsung은 대한민국 3개의 본사를 둔 큰");
+		CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+		TypeAttribute typeAtt = stream.addAttribute(TypeAttribute.class);
+		stream.reset();
+		while (stream.incrementToken()) {
+			terms.add(termAtt.toString());
+			types.add(typeAtt.type());
+		}
+		stream.end();
+		stream.close();
+		analyzer.close();
+
+		System.out.println("  <Terms> " + terms + " " + types);
+		assertEquals(Arrays.asList("samsung", "대한민국", "본사", "두", "크"), terms);
+		assertEquals(Arrays.asList("F", "NQ", "NC", "PV", "PA"), types);
+	}
 }
@@ -4,17 +4,27 @@
 package kr.jihee.irnlp_toolkit.ml;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 import junit.framework.TestCase;
+import kr.jihee.irnlp_toolkit.ml.MalletWrapper.AlphabetType;
 import kr.jihee.irnlp_toolkit.ml.MalletWrapper.CRFResult;
+import kr.jihee.irnlp_toolkit.ml.MalletWrapper.CRFResultHandler;
+import kr.jihee.irnlp_toolkit.ml.MalletWrapper.CompactAlphabet;
+import kr.jihee.irnlp_toolkit.ml.MalletWrapper.LDAProgress;
 import kr.jihee.irnlp_toolkit.ml.MalletWrapper.LDAResult;
 import kr.jihee.irnlp_toolkit.ml.MalletWrapper.MalletCRFWrapper;
 import kr.jihee.irnlp_toolkit.ml.MalletWrapper.MalletLDAWrapper;
 import kr.jihee.java_toolkit.util.JString;
 import kr.jihee.java_toolkit.util.JString.JEntry;
+import cc.mallet.types.FeatureVectorSequence;
 import cc.mallet.types.IDSorter;
 
 /**
@@ -24,6 +34,34 @@ import cc.mallet.types.IDSorter;
  */
 public class TestMallet extends TestCase {
 
+	private int num_keywords;
+	private int top_topics;
+	private boolean keep_dist;
+	private boolean target_processing;
+	private AlphabetType alphabet_type;
+
+	/**
+	 * Save the defaults changed by tests
+	 */
+	protected void setUp() {
+		num_keywords = MalletLDAWrapper.DEFAULT_NUM_KEYWORDS;
+		top_topics = MalletLDAWrapper.DEFAULT_TOP_TOPICS;
+		keep_dist = MalletLDAWrapper.DEFAULT_KEEP_DIST;
+		target_processing = MalletCRFWrapper.DEFAULT_TARGET_PROCESSING;
+		alphabet_type = MalletWrapper.DEFAULT_ALPHABET_TYPE;
+	}
+
+	/**
+	 * Restore the defaults changed by tests
+	 */
+	protected void tearDown() {
+		MalletLDAWrapper.DEFAULT_NUM_KEYWORDS = num_keywords;
+		MalletLDAWrapper.DEFAULT_TOP_TOPICS = top_topics;
+		MalletLDAWrapper.DEFAULT_KEEP_DIST = keep_dist;
+		MalletCRFWrapper.DEFAULT_TARGET_PROCESSING = target_processing;
+		MalletWrapper.DEFAULT_ALPHABET_TYPE = alphabet_type;
+	}
+
 	/**
 	 * MalletCRFWrapper Test
 	 */
@@ -95,4 +133,250 @@ public class TestMallet extends TestCase {
 			System.out.println(JString.join("\t", result.id, result.name, JString.join(", ", dists)));
 		}
 	}
+
+	private static String[] getCRFData(int from, int to) {
+		ArrayList<String> items = new ArrayList<String>();
+		items.add("John/NNP/NP loves/VBZ/O ice/NN/NP cream/NN/NP cake/NN/NP ././O");
+		items.add("But/CC/O he/PRP/NP does/VBZ/O not/RB/O love/VB/O orange/JJ/NP juice/NN/NP ././O");
+		items.add("You/PRP/NP do/VBP/O not/RB/O eat/VB/O apple/NN/NP ././O");
+		items.add("But/CC/O Mary/NNP/NP loves/VBZ/O it/PRP/NP ././O");
+		for (int i = 0; i < items.size(); i++)
+			items.set(i, items.get(i).replace(" ", "\n").replace("/", "  "));
+		return items.subList(from, to).toArray(new String[0]);
+	}
+
+	private static MalletCRFWrapper trainCRF() {
+		MalletCRFWrapper.DEFAULT_TARGET_PROCESSING = true;
+		MalletCRFWrapper crf = new MalletCRFWrapper();
+		crf.setTrainData(getCRFData(0, 2));
+		crf.train(500);
+		return crf;
+	}
+
+	private static final String[] TAG_TOKENS = new String[] { "Mary  NNP", "loves  VBZ", "orange  JJ", "juice  NN", ".  ." };
+
+	/**
+	 * MalletCRFWrapper Test for multi-threaded training
+	 */
+	public void testMalletCRFWrapperForThreadedTraining() {
+		System.out.println("\n----- testMalletCRFWrapperForThreadedTraining() ------------------------------");
+		MalletCRFWrapper.DEFAULT_TARGET_PROCESSING = true;
+		MalletCRFWrapper crf = new MalletCRFWrapper();
+		crf.setTrainData(getCRFData(0, 2));
+		crf.train(500, 2, 1e-6);
+		assertTrue(crf.model != null);
+		assertTrue(crf.progress.size() > 0);
+		assertTrue(crf.progress.get(crf.progress.size() - 1).log_likelihood >= crf.progress.get(0).log_likelihood);
+	}
+
+	/**
+	 * MalletCRFWrapper Test for parallel decoding
+	 * 
+	 * @throws Exception
+	 */
+	public void testMalletCRFWrapperForParallelDecoding() throws Exception {
+		System.out.println("\n----- testMalletCRFWrapperForParallelDecoding() ------------------------------");
+		MalletCRFWrapper crf = trainCRF();
+		crf.setTestData(getCRFData(2, 4));
+		List<CRFResult> sequential_results = crf.test(2);
+		List<CRFResult> parallel_results = crf.test(2, 2);
+		assertEquals(2, parallel_results.size());
+		for (int i = 0; i < parallel_results.size(); i++)
+			assertEquals(sequential_results.get(i).outputs, parallel_results.get(i).outputs);
+	}
+
+	/**
+	 * MalletCRFWrapper Test for tagging a single sentence
+	 */
+	public void testMalletCRFWrapperForTagging() {
+		System.out.println("\n----- testMalletCRFWrapperForTagging() ------------------------------");
+		MalletCRFWrapper crf = trainCRF();
+		String[] tags = crf.tag(TAG_TOKENS);
+		assertEquals(TAG_TOKENS.length, tags.length);
+		System.out.println(String.join(" ", tags));
+		assertEquals(2, crf.tag(new String[] { "unseen  XX", "words  YY" }).length);
+	}
+
+	/**
+	 * MalletCRFWrapper Test for saving and loading a model
+	 * 
+	 * @throws Exception
+	 */
+	public void testMalletCRFWrapperForModelIO() throws Exception {
+		System.out.println("\n----- testMalletCRFWrapperForModelIO() ------------------------------");
+		MalletCRFWrapper crf = trainCRF();
+		crf.setTestData(getCRFData(2, 4));
+		String model_file = System.getProperty("user.home") + "/crf.model.gz";
+		crf.saveModel(model_file);
+
+		MalletCRFWrapper crf2 = new MalletCRFWrapper();
+		crf2.loadModel(model_file);
+		assertTrue(Arrays.equals(crf.tag(TAG_TOKENS), crf2.tag(TAG_TOKENS)));
+		crf2.setTestData(getCRFData(2, 4));
+		assertEquals(crf.test(2).get(0).outputs, crf2.test(2).get(0).outputs);
+	}
+
+	/**
+	 * MalletCRFWrapper Test for streaming data from a file
+	 * 
+	 * @throws IOException
+	 */
+	public void testMalletCRFWrapperForStreaming() throws IOException {
+		System.out.println("\n----- testMalletCRFWrapperForStreaming() ------------------------------");
+		String data_file = System.getProperty("user.home") + "/np_data.txt.gz";
+		Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(data_file)), "UTF-8");
+		for (String item : getCRFData(0, 4))
+			writer.write(item + "\n\n\n");
+		writer.close();
+
+		MalletCRFWrapper crf = trainCRF();
+		final List<CRFResult> streamed_results = new ArrayList<CRFResult>();
+		assertEquals(2, crf.test(data_file, 1, 2, 1, new CRFResultHandler() {
+			public void handle(CRFResult result) {
+				streamed_results.add(result);
+			}
+		}));
+		assertEquals(5, streamed_results.get(1).input.size());
+
+		crf.setTrainData(data_file, 0, 2);
+		assertEquals(2, crf.train_data.size());
+		assertEquals(6, ((FeatureVectorSequence) crf.train_data.get(1).getData()).size());
+	}
+
+	/**
+	 * MalletCRFWrapper Test for compact and hashing alphabets
+	 * 
+	 * @throws Exception
+	 */
+	public void testMalletCRFWrapperForAlphabet() throws Exception {
+		System.out.println("\n----- testMalletCRFWrapperForAlphabet() ------------------------------");
+		CompactAlphabet alphabet = new CompactAlphabet();
+		for (int i = 0; i < 1000; i++)
+			assertEquals(i, alphabet.lookupIndex("w=" + i));
+		assertEquals(1000, alphabet.size());
+		assertEquals(123, alphabet.lookupIndex("w=123"));
+		assertEquals("w=999", alphabet.lookupObject(999));
+		alphabet.stopGrowth();
+		assertEquals(-1, alphabet.lookupIndex("w=1000"));
+		assertEquals(1000, alphabet.size());
+
+		String model_file = System.getProperty("user.home") + "/crf.model.gz";
+		String[] tags = trainCRF().tag(TAG_TOKENS);
+		for (AlphabetType type : AlphabetType.values()) {
+			MalletWrapper.DEFAULT_ALPHABET_TYPE = type;
+			MalletCRFWrapper crf = trainCRF();
+			assertEquals(type == AlphabetType.COMPACT, crf.model.getInputAlphabet() instanceof CompactAlphabet);
+			crf.saveModel(model_file);
+			crf.loadModel(model_file);
+			String[] type_tags = crf.tag(TAG_TOKENS);
+			System.out.printf("%s: %s\n", type, String.join(" ", type_tags));
+			if (type != AlphabetType.HASHING)
+				assertTrue(Arrays.equals(tags, type_tags));
+		}
+	}
+
+	private static JEntry[] getLDAData() {
+		ArrayList<JEntry> items = new ArrayList<JEntry>();
+		String kr_def = "Korea called Hanguk in South Korea and Chosŏn in North Korea, is an East Asian territory that is divided into two distinct sovereign states, North Korea and South Korea. Located on the Korean Peninsula, Korea is bordered by China to the northwest and Russia to the northeast. It is separated from Japan to the east by the Korea Strait and the Sea of Japan (East Sea). The adoption of the Chinese writing system in the 2nd century BC and the introduction of Buddhism in the 4th century AD had profound effects on the Three Kingdoms of Korea, which was first united during the Silla (57 BC – AD 935) under the King Munmu. The united Silla fell to Goryeo in 935 at the end of the Later Three Kingdoms. Goryeo was a highly cultured state and created the Jikji in the 14th century. The invasions by the Mongolians in the 13th century, however, greatly weakened the nation, which was forced to become a tributary state. After the Mongol Empire's collapse, severe political strife followed. The Ming-allied Joseon emerged supreme in 1388.";
+		String jp_def = "Japan is an island nation in East Asia. Located in the Pacific Ocean, it lies to the east of the Sea of Japan, China, North Korea, South Korea and Russia, stretching from the Sea of Okhotsk in the north to the East China Sea and Taiwan in the south. The characters that make up Japan's name mean sun-origin, which is why Japan is often referred to as the Land of the Rising Sun.";
+		String cn_def = "China is a sovereign state located in East Asia. It is the world's most populous country, with a population of over 1.35 billion. The PRC is a single-party state governed by the Communist Party, with its seat of government in the capital city of Beijing.[15] It exercises jurisdiction over 22 provinces, five autonomous regions, four direct-controlled municipalities (Beijing, Tianjin, Shanghai, and Chongqing), and two mostly self-governing special administrative regions (Hong Kong and Macau). The PRC also claims Taiwan – which is controlled by the Republic of China (ROC), a separate political entity – as its 23rd province, a claim which is controversial due to the complex political status of Taiwan.[16]";
+		String it_def = "Italy is a unitary parliamentary republic in Southern Europe. To the north, Italy borders France, Switzerland, Austria, and Slovenia, and is approximately delimited by the Alpine watershed, enclosing the Po Valley and the Venetian Plain. To the south, it consists of the entirety of the Italian Peninsula and the two biggest Mediterranean islands of Sicily and Sardinia.";
+		String fr_def = "France is a sovereign country in Western Europe that includes several overseas regions and territories.[note 13] Metropolitan France extends from the Mediterranean Sea to the English Channel and the North Sea, and from the Rhine to the Atlantic Ocean. It is one of only three countries (with Morocco and Spain) to have both Atlantic and Mediterranean coastlines. Due to its shape, it is often referred to in French as l’Hexagone.";
+		String en_def = "England is a country that is part of the United Kingdom.[2][3][4] It shares land borders with Scotland to the north and Wales to the west. The Irish Sea lies north west of England, whilst the Celtic Sea lies to the south west. The North Sea to the east and the English Channel to the south separate it from continental Europe. Most of England comprises the central and southern part of the island of Great Britain which lies in the North Atlantic. The country also includes over 100 smaller islands such as the Isles of Scilly, and the Isle of Wight.";
+		items.add(new JEntry("kr", kr_def));
+		items.add(new JEntry("jp", jp_def));
+		items.add(new JEntry("cn", cn_def));
+		items.add(new JEntry("it", it_def));
+		items.add(new JEntry("fr", fr_def));
+		items.add(new JEntry("en", en_def));
+
+		return items.toArray(new JEntry[0]);
+	}
+
+	private static MalletLDAWrapper trainLDA() throws IOException {
+		MalletLDAWrapper lda = new MalletLDAWrapper(null);
+		lda.setInputData(getLDAData());
+		lda.cluster(2, 300);
+		return lda;
+	}
+
+	/**
+	 * MalletLDAWrapper Test for chunked estimation with progress
+	 * 
+	 * @throws IOException
+	 */
+	public void testMalletLDAWrapperForChunkedEstimation() throws IOException {
+		System.out.println("\n----- testMalletLDAWrapperForChunkedEstimation() ------------------------------");
+		MalletLDAWrapper lda = new MalletLDAWrapper(null);
+		lda.setInputData(getLDAData());
+		List<LDAResult> results = lda.cluster(2, 300, 2, 0, 100, 0.01);
+		assertEquals(6, results.size());
+		assertTrue(lda.progress.size() > 0);
+		assertTrue(lda.progress.get(lda.progress.size() - 1).iteration <= 300);
+		for (LDAProgress progress : lda.progress)
+			assertTrue(progress.log_likelihood < 0 && progress.tokens_per_sec > 0);
+	}
+
+	/**
+	 * MalletLDAWrapper Test for compact and hashing alphabets
+	 * 
+	 * @throws IOException
+	 */
+	public void testMalletLDAWrapperForAlphabet() throws IOException {
+		System.out.println("\n----- testMalletLDAWrapperForAlphabet() ------------------------------");
+		MalletWrapper.DEFAULT_ALPHABET_TYPE = AlphabetType.COMPACT;
+		MalletLDAWrapper lda = new MalletLDAWrapper(null);
+		lda.setInputData(getLDAData());
+		assertEquals(6, lda.cluster(2, 300).size());
+		assertTrue(lda.model.getAlphabet() instanceof CompactAlphabet);
+
+		MalletWrapper.DEFAULT_ALPHABET_TYPE = AlphabetType.HASHING;
+		try {
+			new MalletLDAWrapper(null).setInputData(getLDAData());
+			fail("HashingAlphabet should be rejected by MalletLDAWrapper");
+		} catch (IllegalStateException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * MalletLDAWrapper Test for saving and loading a model, and inferring topics of new documents
+	 * 
+	 * @throws Exception
+	 */
+	public void testMalletLDAWrapperForModelIO() throws Exception {
+		System.out.println("\n----- testMalletLDAWrapperForModelIO() ------------------------------");
+		JEntry[] data = getLDAData();
+		String model_file = System.getProperty("user.home") + "/lda.model";
+		trainLDA().saveModel(model_file);
+
+		MalletLDAWrapper lda = new MalletLDAWrapper(null);
+		lda.loadModel(model_file);
+		LDAResult inferred = lda.infer("kr2", "South Korea and North Korea are divided on the Korean Peninsula.");
+		assertEquals("kr2", inferred.name);
+		assertEquals(2, inferred.outputs.size());
+		List<LDAResult> inferred_results = lda.infer(data, 2);
+		assertEquals(6, inferred_results.size());
+		for (int i = 0; i < data.length; i++)
+			assertEquals(data[i].getKey(), inferred_results.get(i).name);
+		assertEquals(lda.model.getAlphabet().size(), lda.pipe.getDataAlphabet().size());
+	}
+
+	/**
+	 * MalletLDAWrapper Test for selecting top topics of a distribution
+	 * 
+	 * @throws IOException
+	 */
+	public void testMalletLDAWrapperForTopTopics() throws IOException {
+		System.out.println("\n----- testMalletLDAWrapperForTopTopics() ------------------------------");
+		assertTrue(Arrays.equals(new int[] { 3, 4, 1 }, MalletLDAWrapper.selectTop(new double[] { 0.1, 0.3, 0.0, 0.5, 0.3 }, 3)));
+
+		MalletLDAWrapper lda = trainLDA();
+		MalletLDAWrapper.DEFAULT_TOP_TOPICS = 1;
+		MalletLDAWrapper.DEFAULT_KEEP_DIST = true;
+		LDAResult inferred = lda.infer("kr2", "South Korea and North Korea are divided on the Korean Peninsula.");
+		assertEquals(1, inferred.outputs.size());
+		assertEquals(2, inferred.dist.length);
+		assertEquals(inferred.outputs.get(0).getWeight(), Math.max(inferred.dist[0], inferred.dist[1]), 1e-6);
+	}
 }
@@ -5,10 +5,19 @@ package kr.jihee.irnlp_toolkit.nlp;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.TestCase;
 import kr.jihee.irnlp_toolkit.Env;
+import kr.jihee.irnlp_toolkit.nlp.AnnotatorLoader.LoadMode;
+import kr.jihee.irnlp_toolkit.nlp.AnnotatorLoader.LoadTask;
 import kr.jihee.irnlp_toolkit.nlp.ClearNlpWrapper;
 import kr.jihee.irnlp_toolkit.nlp.StanfordNlpWrapper;
 import kr.jihee.irnlp_toolkit.nlp.ClearNlpWrapper.SRLNode;
@@ -30,6 +39,9 @@ public class TestClearNLP extends TestCase {
 	public static final boolean TEST_CONFIG = true;
 	public static final boolean TEST_BASIC = false;
 	public static final boolean TEST_ADVANCED = false;
+	public static final boolean TEST_CONCURRENT = false;
+	public static final boolean TEST_LOADING = false;
+	public static final boolean TEST_RETRY = true;
 
 	/**
 	 * Configuration file Test
@@ -133,4 +145,108 @@ public class TestClearNLP extends TestCase {
 		assertEquals(toks.size(), units.toStringSRL().split("\n").length);
 		System.out.println(units.toStringSRL());
 	}
+
+	/**
+	 * ClearNlpWrapper Test for concurrent functions
+	 * 
+	 * @throws IOException
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 */
+	public void testClearNlpWrapperForConcurrent() throws IOException, InterruptedException, ExecutionException {
+		System.out.println("\n----- testClearNlpWrapperForConcurrent() ------------------------------");
+		if (!TEST_CONCURRENT)
+			return;
+
+		String text = "Samsung Electronics is a South Korean multinational electronics company in Suwon, South Korea.";
+		text += " It is the flagship subsidiary of the Samsung Group.";
+		text += " Apple is an American multinational corporation in Cupertino, California.";
+
+		ClearNlpWrapper nlp = new ClearNlpWrapper(Env.CLEARNLP_CFG);
+		nlp.loadAll("tokenize, ssplit, pos, parse, srl");
+
+		List<List<String>> sents = nlp.detect(text);
+		assertEquals(3, sents.size());
+		List<DEPTree> trees = nlp.process(sents, 3);
+		assertEquals(sents.size(), trees.size());
+		for (int i = 0; i < trees.size(); i++) {
+			DEPTree units = trees.get(i);
+			System.out.println("\n[Sentence] " + JString.join(" ", sents.get(i)));
+			assertEquals(sents.get(i).size(), units.size() - 1);
+			assertEquals(units.toStringSRL(), nlp.process(sents.get(i)).toStringSRL());
+			System.out.println(units.toStringSRL());
+		}
+	}
+
+	/**
+	 * ClearNlpWrapper Test for parallel and lazy loading
+	 * 
+	 * @throws IOException
+	 */
+	public void testClearNlpWrapperForLoading() throws IOException {
+		System.out.println("\n----- testClearNlpWrapperForLoading() ------------------------------");
+		if (!TEST_LOADING)
+			return;
+
+		String text = "Samsung Electronics is a South Korean multinational electronics company in Suwon, South Korea.";
+
+		ClearNlpWrapper nlp1 = new ClearNlpWrapper(Env.CLEARNLP_CFG);
+		long start = System.currentTimeMillis();
+		nlp1.loadAll("tokenize, ssplit, pos, parse, srl", LoadMode.PARALLEL);
+		assertTrue(nlp1.awaitReady("tokenize, ssplit", 1, TimeUnit.MINUTES));
+		assertEquals(1, nlp1.detect(text).size());
+		nlp1.awaitReady("pos, parse, srl");
+		assertTrue(nlp1.isReady("tokenize, ssplit, pos, parse, srl"));
+		System.out.printf("  <Loaded> in %.1f sec\n", (System.currentTimeMillis() - start) / 1000.0);
+
+		ClearNlpWrapper nlp2 = new ClearNlpWrapper(Env.CLEARNLP_CFG);
+		nlp2.loadAll("tokenize, ssplit, pos, parse", LoadMode.LAZY);
+		assertFalse(nlp2.isReady("pos"));
+		List<String> toks = nlp2.detect(text).get(0);
+		assertTrue(nlp2.isReady("tokenize, ssplit"));
+		assertFalse(nlp2.isReady("pos"));
+		DEPTree units = nlp2.process(toks);
+		assertTrue(nlp2.isReady("pos, parse"));
+		assertEquals(toks.size(), ClearNlpWrapper.toTypedDependencies(units).size());
+		System.out.println("  <Parsed> " + JString.join("; ", ClearNlpWrapper.toTypedDependencies(units)));
+	}
+
+	/**
+	 * AnnotatorLoader Test for reloading a failed annotator and loading LAZY ones in a single thread
+	 * 
+	 * @throws IOException
+	 */
+	public void testAnnotatorLoaderForRetry() throws IOException {
+		System.out.println("\n----- testAnnotatorLoaderForRetry() ------------------------------");
+		if (!TEST_RETRY)
+			return;
+
+		final AtomicInteger calls = new AtomicInteger();
+		final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+		LoadTask task = new LoadTask() {
+			public void load() throws Exception {
+				threads.add(Thread.currentThread().getName());
+				if (calls.incrementAndGet() == 1)
+					throw new IOException("Missing model file");
+			}
+		};
+		AnnotatorLoader loader = new AnnotatorLoader("TestClearNLP");
+		loader.load("tokenize", LoadMode.LAZY, task);
+		loader.load("ssplit", LoadMode.LAZY, task);
+		loader.load("pos", LoadMode.LAZY, task);
+		try {
+			loader.awaitReady(Arrays.asList("tokenize", "ssplit"), 1, TimeUnit.MINUTES);
+			fail("IOException should be thrown from awaitReady()");
+		} catch (IOException e) {
+			System.out.println("  <Failed> " + e.getMessage());
+		}
+		assertFalse(loader.isReady(Arrays.asList("tokenize")));
+		assertTrue(loader.awaitReady(Arrays.asList("tokenize", "ssplit"), 1, TimeUnit.MINUTES));
+		assertEquals(1, threads.size());
+		assertEquals(3, calls.get());
+
+		loader.ensure("pos");
+		assertTrue(loader.isReady(Arrays.asList("tokenize", "ssplit", "pos")));
+		assertEquals(4, calls.get());
+	}
 }
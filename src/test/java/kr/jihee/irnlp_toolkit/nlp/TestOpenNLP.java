@@ -5,9 +5,18 @@ package kr.jihee.irnlp_toolkit.nlp;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import junit.framework.TestCase;
 import kr.jihee.irnlp_toolkit.Env;
+import kr.jihee.irnlp_toolkit.nlp.ModelRegistry;
+import kr.jihee.irnlp_toolkit.nlp.ModelRegistry.ModelStats;
 import kr.jihee.irnlp_toolkit.nlp.OpenNlpWrapper;
 import kr.jihee.java_toolkit.util.JString;
 
@@ -21,6 +30,8 @@ public class TestOpenNLP extends TestCase {
 	public static final boolean TEST_CONFIG = true;
 	public static final boolean TEST_BASIC = true;
 	public static final boolean TEST_ADVANCED = false;
+	public static final boolean TEST_CONCURRENT = false;
+	public static final boolean TEST_REGISTRY = false;
 
 	/**
 	 * Configuration file Test
@@ -67,6 +78,7 @@ public class TestOpenNLP extends TestCase {
 			System.out.println("  <Chunked> " + OpenNlpWrapper.toChunkString(toks, tags, chunks));
 			System.out.println("  <Parsed> " + OpenNlpWrapper.toTreeString(nlp.parse(sent)));
 		}
+		nlp.release();
 	}
 
 	/**
@@ -95,4 +107,77 @@ public class TestOpenNLP extends TestCase {
 			System.out.println("  <Recognized> " + JString.join(", ", nlp.recognize(toks)));
 		}
 	}
+
+	/**
+	 * OpenNlpWrapper Test for concurrent mode
+	 * 
+	 * @throws IOException
+	 * @throws ExecutionException
+	 * @throws InterruptedException
+	 */
+	public void testOpenNlpWrapperForConcurrent() throws IOException, InterruptedException, ExecutionException {
+		System.out.println("\n----- testOpenNlpWrapperForConcurrent() ------------------------------");
+		if (!TEST_CONCURRENT)
+			return;
+
+		final String text = "Samsung Electronics is a South Korean multinational electronics company headquartered in Suwon, South Korea.";
+
+		final OpenNlpWrapper nlp = new OpenNlpWrapper(Env.OPENNLP_CFG, true);
+		nlp.loadAll("tokenize, pos, chunk");
+		assertTrue(nlp.tokenizerModel != null);
+		assertTrue(nlp.tokenizer == null);
+
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		for (int i = 0; i < 16; i++)
+			results.add(pool.submit(new Callable<String>() {
+				public String call() {
+					String[] toks = nlp.tokenize(text);
+					String[] tags = nlp.tag(toks);
+					return OpenNlpWrapper.toChunkString(toks, tags, nlp.chunk(toks, tags));
+				}
+			}));
+		pool.shutdown();
+
+		String expected = results.get(0).get();
+		System.out.println("  <Chunked> " + expected);
+		for (Future<String> result : results)
+			assertEquals(expected, result.get());
+	}
+
+	/**
+	 * OpenNlpWrapper Test for sharing models through ModelRegistry
+	 * 
+	 * @throws IOException
+	 */
+	public void testOpenNlpWrapperForRegistry() throws IOException {
+		System.out.println("\n----- testOpenNlpWrapperForRegistry() ------------------------------");
+		if (!TEST_REGISTRY)
+			return;
+
+		OpenNlpWrapper nlp1 = new OpenNlpWrapper(Env.OPENNLP_CFG);
+		OpenNlpWrapper nlp2 = new OpenNlpWrapper(Env.OPENNLP_CFG, true);
+		// the registry is process-wide, so counts are compared with those before this test
+		String pos_model = nlp1.prop.getProperty("pos.model");
+		ModelStats stats = ModelRegistry.getStats("OpenNLP.pos", pos_model);
+		int refs = stats != null ? stats.refs : 0;
+
+		nlp1.loadAll("tokenize, pos");
+		nlp2.loadAll("tokenize, pos");
+		nlp2.loadPosTagger();
+		assertSame(nlp1.tokenizerModel, nlp2.tokenizerModel);
+		assertSame(nlp1.taggerModel, nlp2.taggerModel);
+		assertEquals(refs + 2, ModelRegistry.getStats("OpenNLP.pos", pos_model).refs);
+		System.out.println(ModelRegistry.getStatsReport());
+
+		nlp1.release();
+		assertEquals(refs + 1, ModelRegistry.getStats("OpenNLP.pos", pos_model).refs);
+		assertFalse(ModelRegistry.evict("OpenNLP.pos", pos_model));
+		nlp2.release();
+		assertEquals(refs, ModelRegistry.getStats("OpenNLP.pos", pos_model).refs);
+		if (refs == 0) {
+			assertTrue(ModelRegistry.evict("OpenNLP.pos", pos_model));
+			assertNull(ModelRegistry.getStats("OpenNLP.pos", pos_model));
+		}
+	}
 }
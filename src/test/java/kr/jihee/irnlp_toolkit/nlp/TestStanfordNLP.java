@@ -5,8 +5,13 @@ package kr.jihee.irnlp_toolkit.nlp;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.XPathExpressionException;
@@ -14,6 +19,8 @@ import javax.xml.xpath.XPathExpressionException;
 import junit.framework.TestCase;
 import kr.jihee.irnlp_toolkit.Env;
 import kr.jihee.irnlp_toolkit.nlp.StanfordNlpWrapper;
+import kr.jihee.irnlp_toolkit.nlp.StanfordNlpWrapper.AnnotationResult;
+import kr.jihee.irnlp_toolkit.nlp.StanfordNlpWrapper.FailurePolicy;
 import kr.jihee.java_toolkit.io.JXml;
 import kr.jihee.java_toolkit.util.JString;
 
@@ -21,10 +28,13 @@ import org.w3c.dom.Element;
 import org.xml.sax.SAXException;
 
 import edu.stanford.nlp.dcoref.CorefChain.CorefMention;
+import edu.stanford.nlp.io.RuntimeIOException;
 import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
 import edu.stanford.nlp.ling.HasWord;
 import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.pipeline.Annotator.Requirement;
 import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations.BasicDependenciesAnnotation;
 import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations.CollapsedCCProcessedDependenciesAnnotation;
 import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations.CollapsedDependenciesAnnotation;
@@ -43,6 +53,54 @@ public class TestStanfordNLP extends TestCase {
 	public static final boolean TEST_PIPELINE = false;
 	public static final boolean TEST_SUTIME = false;
 	public static final boolean TEST_UTILITY = false;
+	public static final boolean TEST_FAILURE = true;
+	public static final boolean TEST_TOKENIZE = true;
+
+	/**
+	 * Stub annotator which fails a given number of times with a given failure, and counts its calls
+	 * 
+	 * @author Jihee
+	 */
+	private static class FailingAnnotator implements Annotator {
+
+		private final Throwable failure;
+		private int failures;
+		public int calls = 0;
+		public Set<Requirement> requires = Collections.emptySet();
+		public Set<Requirement> satisfies = Collections.emptySet();
+
+		public FailingAnnotator(Throwable failure, int failures) {
+			this.failure = failure;
+			this.failures = failures;
+		}
+
+		public void annotate(Annotation annotation) {
+			calls++;
+			if (failure == null || failures-- <= 0)
+				return;
+			if (failure instanceof Error)
+				throw (Error) failure;
+			throw (RuntimeException) failure;
+		}
+
+		public Set<Requirement> requirementsSatisfied() {
+			return satisfies;
+		}
+
+		public Set<Requirement> requires() {
+			return requires;
+		}
+	}
+
+	private static StanfordNlpWrapper newStubWrapper(FailurePolicy policy, FailingAnnotator tokenizer, FailingAnnotator parser) throws IOException {
+		StanfordNlpWrapper nlp = new StanfordNlpWrapper(Env.STANFORDNLP_CFG);
+		nlp.failurePolicy = policy;
+		Map<String, Annotator> annotators = new LinkedHashMap<String, Annotator>();
+		annotators.put("tokenize", tokenizer);
+		annotators.put("parse", parser);
+		nlp.loadPipelines(annotators);
+		return nlp;
+	}
 
 	/**
 	 * Configuration file Test
@@ -147,6 +205,173 @@ public class TestStanfordNLP extends TestCase {
 				System.out.printf("%d\t%s\t%s\t%d\t%d\n", e.getKey(), m.mentionType, m.mentionSpan, m.sentNum, m.headIndex);
 	}
 
+	/**
+	 * StanfordNlpWrapper Test for batch pipeline functions
+	 * 
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public void testStanfordNlpWrapperForBatch() throws IOException, InterruptedException {
+		System.out.println("\n----- testStanfordNlpWrapperForBatch() ------------------------------");
+		if (!TEST_PIPELINE)
+			return;
+
+		List<String> texts = new ArrayList<String>();
+		texts.add("Samsung Electronics is a South Korean multinational electronics company headquartered in Suwon, South Korea.");
+		texts.add("It is the flagship subsidiary of the Samsung Group.");
+		texts.add("Apple is an American multinational corporation headquartered in Cupertino, California.");
+
+		StanfordNlpWrapper nlp = new StanfordNlpWrapper(Env.STANFORDNLP_CFG);
+		nlp.loadAll("tokenize, ssplit, pos, lemma, ner");
+		assertTrue(nlp.annotator != null);
+
+		List<AnnotationResult> results = nlp.annotate(texts, 2);
+		assertEquals(texts.size(), results.size());
+		for (int i = 0; i < results.size(); i++) {
+			AnnotationResult result = results.get(i);
+			System.out.println(result);
+			assertEquals(i, result.index);
+			assertEquals(texts.get(i), result.text);
+			assertFalse(result.isFailed());
+			assertEquals(1, result.annotation.get(SentencesAnnotation.class).size());
+		}
+
+		System.out.println(nlp.getStatsReport());
+		assertEquals(texts.size(), nlp.getStats(StanfordNlpWrapper.DOCUMENT_STATS).getCount());
+		assertEquals(texts.size(), nlp.getStats("pos").getSentences());
+	}
+
+	/**
+	 * StanfordNlpWrapper Test for NO_RETRY failure policy
+	 * 
+	 * @throws IOException
+	 */
+	public void testStanfordNlpWrapperForNoRetry() throws IOException {
+		System.out.println("\n----- testStanfordNlpWrapperForNoRetry() ------------------------------");
+		if (!TEST_FAILURE)
+			return;
+
+		FailingAnnotator parser = new FailingAnnotator(new RuntimeIOException("transient"), 1);
+		StanfordNlpWrapper nlp = newStubWrapper(FailurePolicy.NO_RETRY, new FailingAnnotator(null, 0), parser);
+		assertNull(nlp.annotate("Samsung Electronics is a company."));
+		assertEquals(1, parser.calls);
+		assertEquals(0, nlp.getRetryCount());
+		assertEquals(0, nlp.getDegradeCount());
+		assertEquals(1, nlp.getStats(StanfordNlpWrapper.DOCUMENT_STATS).getFailures());
+
+		nlp = newStubWrapper(FailurePolicy.NO_RETRY, new FailingAnnotator(null, 0), new FailingAnnotator(new OutOfMemoryError("stub"), 1));
+		try {
+			nlp.annotate("Samsung Electronics is a company.");
+			fail("OutOfMemoryError is expected to propagate");
+		} catch (OutOfMemoryError e) {
+			System.out.println(" + propagated: " + e);
+		}
+	}
+
+	/**
+	 * StanfordNlpWrapper Test for RETRY_TRANSIENT failure policy
+	 * 
+	 * @throws IOException
+	 */
+	public void testStanfordNlpWrapperForRetryTransient() throws IOException {
+		System.out.println("\n----- testStanfordNlpWrapperForRetryTransient() ------------------------------");
+		if (!TEST_FAILURE)
+			return;
+
+		FailingAnnotator parser = new FailingAnnotator(new RuntimeIOException("transient"), 1);
+		StanfordNlpWrapper nlp = newStubWrapper(FailurePolicy.RETRY_TRANSIENT, new FailingAnnotator(null, 0), parser);
+		assertNotNull(nlp.annotate("Samsung Electronics is a company."));
+		assertEquals(2, parser.calls);
+		assertEquals(1, nlp.getRetryCount());
+		assertEquals(0, nlp.getDegradeCount());
+
+		parser = new FailingAnnotator(new IllegalStateException("deterministic"), 1);
+		nlp = newStubWrapper(FailurePolicy.RETRY_TRANSIENT, new FailingAnnotator(null, 0), parser);
+		assertNull(nlp.annotate("Samsung Electronics is a company."));
+		assertEquals(1, parser.calls);
+		assertEquals(0, nlp.getRetryCount());
+	}
+
+	/**
+	 * StanfordNlpWrapper Test for DEGRADE failure policy
+	 * 
+	 * @throws IOException
+	 */
+	public void testStanfordNlpWrapperForDegrade() throws IOException {
+		System.out.println("\n----- testStanfordNlpWrapperForDegrade() ------------------------------");
+		if (!TEST_FAILURE)
+			return;
+
+		FailingAnnotator tokenizer = new FailingAnnotator(null, 0);
+		FailingAnnotator parser = new FailingAnnotator(new IllegalStateException("deterministic"), Integer.MAX_VALUE);
+		StanfordNlpWrapper nlp = newStubWrapper(FailurePolicy.DEGRADE, tokenizer, parser);
+		assertNotNull(nlp.annotate("Samsung Electronics is a company."));
+		assertEquals(2, tokenizer.calls);
+		assertEquals(1, parser.calls);
+		assertEquals(0, nlp.getRetryCount());
+		assertEquals(1, nlp.getDegradeCount());
+
+		tokenizer = new FailingAnnotator(null, 0);
+		parser = new FailingAnnotator(new OutOfMemoryError("stub"), Integer.MAX_VALUE);
+		nlp = newStubWrapper(FailurePolicy.DEGRADE, tokenizer, parser);
+		assertNotNull(nlp.annotate("Samsung Electronics is a company."));
+		assertEquals(2, tokenizer.calls);
+		assertEquals(1, nlp.getDegradeCount());
+	}
+
+	/**
+	 * StanfordNlpWrapper Test for DEGRADE failure policy dropping the annotators which depend on a degradable one
+	 * 
+	 * @throws IOException
+	 */
+	public void testStanfordNlpWrapperForDegradeDependents() throws IOException {
+		System.out.println("\n----- testStanfordNlpWrapperForDegradeDependents() ------------------------------");
+		if (!TEST_FAILURE)
+			return;
+
+		FailingAnnotator tokenizer = new FailingAnnotator(null, 0);
+		FailingAnnotator parser = new FailingAnnotator(new IllegalStateException("deterministic"), Integer.MAX_VALUE);
+		parser.satisfies = Collections.singleton(new Requirement("parse"));
+		FailingAnnotator dependent = new FailingAnnotator(null, 0);
+		dependent.requires = parser.satisfies;
+		FailingAnnotator independent = new FailingAnnotator(null, 0);
+
+		StanfordNlpWrapper nlp = new StanfordNlpWrapper(Env.STANFORDNLP_CFG);
+		nlp.failurePolicy = FailurePolicy.DEGRADE;
+		Map<String, Annotator> annotators = new LinkedHashMap<String, Annotator>();
+		annotators.put("tokenize", tokenizer);
+		annotators.put("parse", parser);
+		annotators.put("dependent", dependent);
+		annotators.put("independent", independent);
+		nlp.loadPipelines(annotators);
+
+		assertNotNull(nlp.annotate("Samsung Electronics is a company."));
+		assertEquals(1, nlp.getDegradeCount());
+		assertEquals(2, tokenizer.calls);
+		assertEquals(0, dependent.calls);
+		assertEquals(1, independent.calls);
+	}
+
+	/**
+	 * StanfordNlpWrapper Test for the instrumented pipeline of annotators needing no model
+	 * 
+	 * @throws IOException
+	 */
+	public void testStanfordNlpWrapperForTokenize() throws IOException {
+		System.out.println("\n----- testStanfordNlpWrapperForTokenize() ------------------------------");
+		if (!TEST_TOKENIZE)
+			return;
+
+		StanfordNlpWrapper nlp = new StanfordNlpWrapper(Env.STANFORDNLP_CFG);
+		nlp.loadAll("tokenize, ssplit");
+		Annotation annotation = nlp.annotate("Samsung Electronics is a company. It is in Korea.");
+		assertEquals(2, annotation.get(SentencesAnnotation.class).size());
+		assertEquals(1, nlp.getStats("tokenize").getCount());
+		assertEquals(1, nlp.getStats("ssplit").getCount());
+		assertEquals(2, nlp.getStats("ssplit").getSentences());
+		System.out.println(nlp.getStatsReport());
+	}
+
 	/**
 	 * StanfordNlpWrapper Test for SUTime functions
 	 * 